@@ -1,16 +1,24 @@
 package com.dhenry.baseadapter;
 
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.databinding.DataBindingUtil;
 import android.databinding.ObservableList;
 import android.databinding.OnRebindCallback;
 import android.databinding.ViewDataBinding;
+import android.os.Bundle;
 import android.os.Looper;
 import android.support.annotation.IdRes;
 import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.support.v7.widget.Toolbar;
+import android.support.v7.widget.helper.ItemTouchHelper;
 import android.util.Pair;
 import android.util.SparseArray;
 import android.view.LayoutInflater;
@@ -20,9 +28,15 @@ import android.view.ViewGroup;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Created by hendavid on 7/13/16.
@@ -50,6 +64,11 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
     // for persisting selected items during configuration changes
     public static final String STATE_SELECTED_ITEMS = "state-selected-items";
 
+    /**
+     * Span size that makes an item fill the whole row of a grid.
+     */
+    public static final int SPAN_FULL = -1;
+
     public interface OnItemDeletedListener<T> {
         void onItemsDeleted(List<T> items);
     }
@@ -74,6 +93,31 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         void refreshViewState();
     }
 
+    public interface OnSelectionChangedListener<T> {
+        /**
+         * Called at most once per frame with the net selection change since the previous call.
+         *
+         * @param added         items that became selected
+         * @param removed       items that became deselected
+         * @param totalSelected the number of selected items
+         */
+        void onSelectionChanged(List<T> added, List<T> removed, int totalSelected);
+    }
+
+    public interface PendingItemPredicate<T> {
+        /**
+         * @return true if item is not fully loaded yet and should be shown as a placeholder
+         */
+        boolean isPending(T item, int position);
+    }
+
+    public interface OnItemMovedListener<T> {
+        /**
+         * Called once per drag gesture after the item has been dropped.
+         */
+        void onItemMoved(T item, int fromPosition, int toPosition);
+    }
+
     public static <T> Builder<T> with(List<T> list, int variable) {
         return new Builder<>(list, variable);
     }
@@ -82,6 +126,18 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         return new Builder<>(list);
     }
 
+    /**
+     * Starts a Builder without a list, for compiling a reusable {@link AdapterConfig} with
+     * {@link Builder#build()}.
+     */
+    public static <T> Builder<T> configure(int variable) {
+        return new Builder<>(null, variable);
+    }
+
+    public static <T> Builder<T> configure() {
+        return new Builder<>(null);
+    }
+
     private static final Object DATA_INVALIDATION = new Object();
 
     /**
@@ -89,6 +145,11 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
      */
     private static final int DEFAULT_LISTENER_INDEX = 0;
 
+    /**
+     * No recycled view budget was configured, the pool sizes are left to the app.
+     */
+    private static final int NO_RECYCLED_VIEW_BUDGET = -1;
+
     private WeakReferenceOnListChangedCallback onListChangedCallback = new WeakReferenceOnListChangedCallback(this);
     private RecyclerView recyclerView = null;
     private LayoutInflater inflater = null;
@@ -106,30 +167,157 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
     private final WeakReference<Toolbar> toolbarRef;
     private T previouslyClickedItem;
     private View previouslyClickedView;
+    private CachedSpanSizeLookup spanSizeLookup;
+    // the lookup that was installed before spanSizeLookup, restored on detach
+    private GridLayoutManager.SpanSizeLookup previousSpanSizeLookup;
+    private final SearchIndex<T> searchIndex;
+    // list changes are not observed while detached
+    private boolean wasDetached = false;
+    private final ItemTouchController<T> itemTouchController;
+    // installed on the RecyclerView while attached
+    private ItemTouchHelper itemTouchHelper;
+    private DelegatedTouchDispatcher touchDispatcher;
+    // set while the adapter mutates an ObservableList itself and notifies on its own
+    private boolean isSuppressingListCallbacks = false;
+    // holders that sit in the recycled view pool, still holding on to their last item
+    private final Set<ViewHolder> recycledHolders = Collections.newSetFromMap(new WeakHashMap<ViewHolder, Boolean>());
+    // registered on the application context while attached, only holds on to the adapter weakly
+    private WeakReferenceTrimMemoryCallback trimMemoryCallback;
+    private final int maxRecycledViews;
+    private int releasedHolderCount = 0;
+    private int releasedCacheBytes = 0;
+    @LayoutRes
+    private final int placeholderLayout;
+    private final PendingItemPredicate<T> pendingItemPredicate;
+    private final boolean isTouchDispatchDelegated;
+    private final OnSelectionChangedListener<T> onSelectionChangedListener;
+    // net selection changes not yet dispatched to the toolbar and listeners
+    private final Set<T> pendingSelected = new LinkedHashSet<>();
+    private final Set<T> pendingDeselected = new LinkedHashSet<>();
+    private boolean isSelectionUpdateScheduled = false;
+    // what the toolbar currently shows, to skip redundant updates
+    private int renderedSelectionCount = -1;
+    private int renderedNavigationIcon = 0;
+
+    private final Runnable selectionUpdate = new Runnable() {
+        @Override
+        public void run() {
+            dispatchSelectionUpdate();
+        }
+    };
 
-    private BaseAdapter(List<T> list, Map<Class, LayoutBindingInfo<T>> map,
-                        OnBindListener<T> onBindListener,
-                        SparseArray<OnClickListener<T>> clickListeners,
-                        SparseArray<OnLongClickListener<T>> longClickListeners,
-                        SelectionModeOnClickListener<T> selectionModeClickListener,
-                        boolean isSelectionModeEnabled,
-                        WeakReference<Toolbar> toolbarRef, List<T> selectedItems,
-                        PreviousItemClickListener<T> previousItemClickListener) {
+    private BaseAdapter(List<T> list, AdapterConfig<T> config, @Nullable List<T> selectedItems) {
 
         this.list = list;
         this.selectedItems = new ArrayList<>();
-        this.map = map;
-        this.onBindListener = onBindListener;
-        this.clickListeners = clickListeners;
-        this.longClickListeners = longClickListeners;
-        this.selectionModeClickListener = selectionModeClickListener;
-        this.previousItemClickListener = previousItemClickListener;
-        this.isSelectionModeEnabled = isSelectionModeEnabled;
-        this.toolbarRef = toolbarRef;
-        selectItems(selectedItems);
-        updateToolbar();
-        if (this.selectionModeClickListener != null) {
-            this.selectionModeClickListener.refreshViewState();
+        this.map = config.map;
+        this.onBindListener = config.onBindListener;
+        this.clickListeners = config.clickListeners;
+        this.longClickListeners = config.longClickListeners;
+        this.selectionModeClickListener = config.selectionModeClickListener;
+        this.previousItemClickListener = config.previousItemClickListener;
+        this.isSelectionModeEnabled = config.isSelectionModeEnabled;
+        this.toolbarRef = config.toolbarRef;
+        this.maxRecycledViews = config.maxRecycledViews;
+        this.placeholderLayout = config.placeholderLayout;
+        this.pendingItemPredicate = config.pendingItemPredicate;
+        this.isTouchDispatchDelegated = config.isTouchDispatchDelegated;
+        this.onSelectionChangedListener = config.onSelectionChangedListener;
+        if (config.isDragEnabled || config.onItemDismissedListener != null) {
+            this.itemTouchController = new ItemTouchController<>(this, config.isDragEnabled,
+                    config.onItemMovedListener, config.onItemDismissedListener);
+        } else {
+            this.itemTouchController = null;
+        }
+        if (config.searchKeyExtractors != null && !config.searchKeyExtractors.isEmpty()) {
+            this.searchIndex = new SearchIndex<>(this, list, config.searchKeyExtractors);
+        } else {
+            this.searchIndex = null;
+        }
+        // the toolbar and selection listener are left alone until selection mode is entered
+        if (!isNullOrEmpty(selectedItems)) {
+            selectItems(selectedItems);
+            scheduleSelectionUpdate();
+        }
+    }
+
+    /**
+     * Immutable adapter configuration compiled by {@link Builder#build()}.
+     * <p>
+     * A config can be shared and used to create any number of adapters, e.g. for the rows of a
+     * nested list, without repeating the Builder calls and allocations for each of them.
+     * <p>
+     * Usage:
+     * <pre>
+     * {@code
+     * static final AdapterConfig<Item> CONFIG = BaseAdapter.<Item>configure(BR.item)
+     * .map(Item.class, R.layout.item)
+     * .build();
+     * CONFIG.into(items, myRecyclerView);
+     * }
+     * </pre>
+     *
+     * @param <T>
+     */
+    public static final class AdapterConfig<T> {
+        private final Map<Class, LayoutBindingInfo<T>> map;
+        private final OnBindListener<T> onBindListener;
+        private final SparseArray<OnClickListener<T>> clickListeners;
+        private final SparseArray<OnLongClickListener<T>> longClickListeners;
+        private final SelectionModeOnClickListener<T> selectionModeClickListener;
+        private final PreviousItemClickListener<T> previousItemClickListener;
+        private final boolean isSelectionModeEnabled;
+        private final WeakReference<Toolbar> toolbarRef;
+        private final List<SearchIndex.KeyExtractor<T>> searchKeyExtractors;
+        private final boolean isDragEnabled;
+        private final OnItemMovedListener<T> onItemMovedListener;
+        private final OnItemDeletedListener<T> onItemDismissedListener;
+        private final int maxRecycledViews;
+        private final int placeholderLayout;
+        private final PendingItemPredicate<T> pendingItemPredicate;
+        private final boolean isTouchDispatchDelegated;
+        private final OnSelectionChangedListener<T> onSelectionChangedListener;
+
+        /**
+         * @param isShared true if the config outlives the builder call, in which case the
+         *                 builder's collections are copied so later builder calls do not leak into it
+         */
+        private AdapterConfig(Builder<T> builder, boolean isShared) {
+            this.map = isShared ? Collections.unmodifiableMap(new HashMap<>(builder.map)) : builder.map;
+            this.onBindListener = builder.onBind;
+            this.clickListeners = isShared ? builder.clickListenerMap.clone() : builder.clickListenerMap;
+            this.longClickListeners = isShared ? builder.longClickListenerMap.clone() : builder.longClickListenerMap;
+            this.selectionModeClickListener = builder.selectionModeClickListener;
+            this.previousItemClickListener = builder.previousItemClickListener;
+            this.isSelectionModeEnabled = builder.isSelectionModeEnabled;
+            this.toolbarRef = builder.toolbarRef;
+            this.searchKeyExtractors = builder.searchKeyExtractors;
+            this.isDragEnabled = builder.isDragEnabled;
+            this.onItemMovedListener = builder.onItemMovedListener;
+            this.onItemDismissedListener = builder.onItemDismissedListener;
+            this.maxRecycledViews = builder.maxRecycledViews;
+            this.placeholderLayout = builder.placeholderLayout;
+            this.pendingItemPredicate = builder.pendingItemPredicate;
+            this.isTouchDispatchDelegated = builder.isTouchDispatchDelegated;
+            this.onSelectionChangedListener = builder.onSelectionChangedListener;
+        }
+
+        /**
+         * Creates an adapter for list without attaching it to a RecyclerView. Drag, swipe and
+         * delegated touch handling are installed once it is set on one.
+         */
+        public BaseAdapter<T> create(@NonNull List<T> list) {
+            return new BaseAdapter<>(list, this, null);
+        }
+
+        public BaseAdapter<T> into(@NonNull List<T> list, RecyclerView recyclerView) {
+            return into(list, recyclerView, null);
+        }
+
+        private BaseAdapter<T> into(@NonNull List<T> list, RecyclerView recyclerView, @Nullable List<T> selectedItems) {
+            BaseAdapter<T> adapter = new BaseAdapter<>(list, this, selectedItems);
+            recyclerView.setAdapter(adapter);
+            return adapter;
         }
     }
 
@@ -145,6 +333,15 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         private boolean isSelectionModeEnabled = false;
         private WeakReference<Toolbar> toolbarRef;
         private List<T> selectedItems;
+        private List<SearchIndex.KeyExtractor<T>> searchKeyExtractors;
+        private OnItemMovedListener<T> onItemMovedListener;
+        private OnItemDeletedListener<T> onItemDismissedListener;
+        private boolean isDragEnabled = false;
+        private int maxRecycledViews = NO_RECYCLED_VIEW_BUDGET;
+        private int placeholderLayout = 0;
+        private PendingItemPredicate<T> pendingItemPredicate;
+        private boolean isTouchDispatchDelegated = false;
+        private OnSelectionChangedListener<T> onSelectionChangedListener;
 
         Builder(List<T> list, int variable) {
             this.list = list;
@@ -167,6 +364,20 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
             return this;
         }
 
+        /**
+         * Maps a class to a layout that occupies spanSize spans when used with a GridLayoutManager.
+         *
+         * @param clazz    the data model class
+         * @param layout   the layout
+         * @param variable the data binding variable
+         * @param spanSize the number of spans, or {@link #SPAN_FULL} to fill the row
+         * @return the builder object
+         */
+        public Builder<T> map(Class clazz, @LayoutRes int layout, int variable, int spanSize) {
+            map.put(clazz, new LayoutBindingInfo<T>(layout, variable, spanSize));
+            return this;
+        }
+
         /**
          * ViewType implementation. Provide a function that takes in one object in your list and determines
          * which layout in your input array to use.
@@ -183,6 +394,22 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
             return this;
         }
 
+        /**
+         * ViewType implementation with a grid span size per layout.
+         *
+         * @param clazz the data model class
+         * @param layouts An array of layouts that may be applied to objects of type {@param clazz}.
+         * @param spanSizes the span size of each layout, or {@link #SPAN_FULL} to fill the row
+         * @param variable the data binding variable.
+         * @param viewTypeFunction a function that determines which layout to use for each object in the input list
+         * @return the builder object
+         */
+        public Builder<T> map(Class clazz, @LayoutRes int[] layouts, int[] spanSizes, int variable,
+                              @NonNull Function<T, Integer, Integer> viewTypeFunction) {
+            map.put(clazz, new LayoutBindingInfo<>(layouts, spanSizes, variable, viewTypeFunction));
+            return this;
+        }
+
         public Builder<T> map(Class clazz, @LayoutRes int layout) {
             if (variable == null) {
                 throw new NullPointerException("View Binding variable must be specified during construction to " +
@@ -277,42 +504,215 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
             return this;
         }
 
+        /**
+         * Listener for the net selection change, fired at most once per frame instead of once per
+         * click.
+         *
+         * @param listener the listener
+         * @return the builder
+         */
+        public Builder<T> onSelectionChangedListener(OnSelectionChangedListener<T> listener) {
+            onSelectionChangedListener = listener;
+            return this;
+        }
+
         public Builder<T> selectedItems(List<T> selectedItems) {
             this.selectedItems = selectedItems;
             return this;
         }
 
+        /**
+         * Maintains a {@link SearchIndex} over the list on a background thread, keyed by the
+         * given extractors.
+         *
+         * @param extractors one or more functions that extract a search key from an item
+         * @return the builder
+         */
+        public Builder<T> searchIndex(@NonNull List<SearchIndex.KeyExtractor<T>> extractors) {
+            searchKeyExtractors = Collections.unmodifiableList(new ArrayList<>(extractors));
+            return this;
+        }
+
+        /**
+         * Items can be reordered by long press and drag. Each drag step is applied to the list
+         * immediately, but the listener is only fired once when the item is dropped. When selection
+         * mode is enabled as well, long press is left to selection mode and dragging is disabled.
+         *
+         * @param listener notified of the net move of each drag gesture, may be null
+         * @return the builder
+         */
+        public Builder<T> dragToReorder(@Nullable OnItemMovedListener<T> listener) {
+            onItemMovedListener = listener;
+            return dragToReorder();
+        }
+
+        public Builder<T> dragToReorder() {
+            isDragEnabled = true;
+            return this;
+        }
+
+        /**
+         * Items can be dismissed by swiping them horizontally. Dismissed items are removed from the
+         * list right away and can be restored with {@link BaseAdapter#undoDismissedItems()}.
+         * The listener receives them in one batch on {@link BaseAdapter#commitDismissedItems()},
+         * as soon as the list is changed structurally in any other way, or when the adapter is
+         * detached from its RecyclerView. A swiped item is also
+         * removed from the selection.
+         *
+         * @param listener notified of the dismissed items when they are committed
+         * @return the builder
+         */
+        public Builder<T> swipeToDismiss(@NonNull OnItemDeletedListener<T> listener) {
+            onItemDismissedListener = listener;
+            return this;
+        }
+
+        /**
+         * Limits the number of recycled views the RecyclerView keeps pooled for each mapped layout.
+         * Under memory pressure the pools are shrunk further and restored to this budget afterwards.
+         * Without a budget the pool sizes are never changed, so pools tuned or shared by the app
+         * are left alone.
+         *
+         * @param maxRecycledViews the pool size per layout, RecyclerView defaults to 5
+         * @return the builder
+         */
+        public Builder<T> maxRecycledViews(int maxRecycledViews) {
+            this.maxRecycledViews = maxRecycledViews;
+            return this;
+        }
+
+        /**
+         * Null items are shown with a lightweight placeholder layout instead of failing, so the
+         * list can be displayed before its data is available. The layout is inflated without data
+         * binding and no listeners are attached to it.
+         *
+         * @param layout the placeholder layout
+         * @return the builder
+         */
+        public Builder<T> placeholder(@LayoutRes int layout) {
+            return placeholder(layout, null);
+        }
+
+        /**
+         * Null items and items for which isPending returns true are shown with a lightweight
+         * placeholder layout.
+         *
+         * @param layout    the placeholder layout
+         * @param isPending determines whether a non null item is still loading, may be null
+         * @return the builder
+         */
+        public Builder<T> placeholder(@LayoutRes int layout, @Nullable PendingItemPredicate<T> isPending) {
+            placeholderLayout = layout;
+            pendingItemPredicate = isPending;
+            return this;
+        }
+
+        /**
+         * Dispatches clicks and long clicks from a single touch listener on the RecyclerView
+         * instead of attaching listener objects to every row. The tapped view is matched against
+         * the view ids registered with {@link #onClickListener(int, OnClickListener)} and
+         * {@link #onLongClickListener(int, OnLongClickListener)}.
+         * <p>
+         * Rows no longer get click listeners, so their layouts should set
+         * {@code android:clickable} on the row root if they need a pressed state. Clickable views
+         * inside a row, such as a CheckBox or Button, handle their own taps unless a listener is
+         * registered for their id.
+         *
+         * @return the builder
+         */
+        public Builder<T> delegateTouchDispatch() {
+            isTouchDispatchDelegated = true;
+            return this;
+        }
+
+        /**
+         * Compiles the current configuration into an immutable {@link AdapterConfig} that can be
+         * reused to create adapters.
+         *
+         * @return the config
+         */
+        public AdapterConfig<T> build() {
+            return new AdapterConfig<>(this, true);
+        }
+
         public BaseAdapter<T> into(RecyclerView recyclerView) {
-            adapter = new BaseAdapter<>(list, map, onBind, clickListenerMap,
-                    longClickListenerMap, selectionModeClickListener, isSelectionModeEnabled, toolbarRef,
-                    selectedItems, previousItemClickListener);
-            recyclerView.setAdapter(adapter);
+            if (list == null) {
+                throw new IllegalStateException("No list was given, use build() and AdapterConfig.into() instead");
+            }
+            adapter = new AdapterConfig<>(this, false).into(list, recyclerView, selectedItems);
             return adapter;
         }
 
     }
 
+    /**
+     * Updates the toolbar subtitle and navigation icon, touching only what changed since the last
+     * update.
+     */
     private void updateToolbar() {
         if (toolbarRef == null) return;
         Toolbar toolbar = toolbarRef.get();
         if (toolbar == null) return;
 
-        toolbar.setSubtitle(null);
+        int count = isSelectionModeActivated() ? getTotalSelectedItems() : 0;
+        if (count != renderedSelectionCount) {
+            toolbar.setSubtitle(count > 0 ? count + " Selected" : null);
+            renderedSelectionCount = count;
+        }
 
-        if (isSelectionModeActivated()) {
-            toolbar.setSubtitle(getTotalSelectedItems() + " Selected");
+        int navigationIcon = isEnteringSelectionMode() ? R.drawable.ic_close_white : R.drawable.ic_arrow_back_white;
+        if (navigationIcon != renderedNavigationIcon) {
+            toolbar.setNavigationIcon(navigationIcon);
+            renderedNavigationIcon = navigationIcon;
         }
+    }
 
-        if (isEnteringSelectionMode()) {
-            toolbar.setNavigationIcon(R.drawable.ic_close_white);
+    /**
+     * Records a selection change to be reported by the next {@link #dispatchSelectionUpdate()}.
+     * Changes that cancel out within a frame are not reported.
+     */
+    private void recordSelectionChange(T item, boolean selected) {
+        if (selected) {
+            if (!pendingDeselected.remove(item)) pendingSelected.add(item);
         } else {
-            toolbar.setNavigationIcon(R.drawable.ic_arrow_back_white);
+            if (!pendingSelected.remove(item)) pendingDeselected.add(item);
+        }
+    }
+
+    /**
+     * Coalesces toolbar and listener updates into one per frame. Updates are dispatched right away
+     * while the adapter is not attached to a RecyclerView.
+     */
+    private void scheduleSelectionUpdate() {
+        if (recyclerView == null) {
+            dispatchSelectionUpdate();
+            return;
+        }
+        if (isSelectionUpdateScheduled) return;
+        isSelectionUpdateScheduled = true;
+        ViewCompat.postOnAnimation(recyclerView, selectionUpdate);
+    }
+
+    private void dispatchSelectionUpdate() {
+        isSelectionUpdateScheduled = false;
+        updateToolbar();
+        if (selectionModeClickListener != null) {
+            selectionModeClickListener.refreshViewState();
+        }
+        if (pendingSelected.isEmpty() && pendingDeselected.isEmpty()) return;
+        List<T> added = new ArrayList<>(pendingSelected);
+        List<T> removed = new ArrayList<>(pendingDeselected);
+        pendingSelected.clear();
+        pendingDeselected.clear();
+        if (onSelectionChangedListener != null) {
+            onSelectionChangedListener.onSelectionChanged(added, removed, getTotalSelectedItems());
         }
     }
 
     class ViewHolder extends RecyclerView.ViewHolder {
 
         private ViewDataBinding binding;
+        private int boundVariable = -1;
 
         public ViewHolder(ViewDataBinding binding) {
             super(binding.getRoot());
@@ -326,22 +726,60 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         void bindTo(T item, int position, OnBindListener<T> onBindListener,
                     SparseArray<OnClickListener<T>> clickListeners,
                     SparseArray<OnLongClickListener<T>> longClickListeners) {
+            // placeholders have nothing to bind
+            if (binding == null) return;
             int variable = getVariableForType(position);
+            boundVariable = variable;
             binding.setVariable(variable, item);
             binding.executePendingBindings();
             View view = binding.getRoot();
-            if (isSelectionModeEnabled) {
-                setMultiSelectModeLongClickListener(view, position);
-                setMultiSelectModeClickListener(view, position, item, clickListeners);
-            } else {
-                setClickListeners(clickListeners, item, position, view);
-                setLongClickListeners(longClickListeners, item, position, view);
+            ViewGroup.LayoutParams params = view.getLayoutParams();
+            if (params instanceof StaggeredGridLayoutManager.LayoutParams) {
+                ((StaggeredGridLayoutManager.LayoutParams) params).setFullSpan(getSpanSize(position) == SPAN_FULL);
+            }
+            // with delegated touch dispatch, clicks are dispatched by DelegatedTouchDispatcher
+            if (!isTouchDispatchDelegated) {
+                if (isSelectionModeEnabled) {
+                    setMultiSelectModeLongClickListener(view);
+                    setMultiSelectModeClickListener(view, clickListeners);
+                } else {
+                    setClickListeners(clickListeners, view);
+                    setLongClickListeners(longClickListeners, view);
+                }
             }
             if (onBindListener != null) {
                 onBindListener.onBind(item, view, position, isSelectionModeEnabled, isItemSelected(position));
             }
         }
 
+        /**
+         * Clears the bound item and listeners so the item can be garbage collected while this
+         * holder sits in the recycled view pool.
+         *
+         * @return true if there was anything to release
+         */
+        boolean unbind() {
+            if (binding == null || boundVariable == -1) return false;
+            binding.setVariable(boundVariable, null);
+            binding.executePendingBindings();
+            boundVariable = -1;
+            // listeners capture the item as well
+            View view = binding.getRoot();
+            for (int i = 0; i < clickListeners.size(); i++) {
+                View viewForListener = getViewForListener(clickListeners.keyAt(i), view);
+                if (viewForListener != null) viewForListener.setOnClickListener(null);
+            }
+            for (int i = 0; i < longClickListeners.size(); i++) {
+                View viewForListener = getViewForListener(longClickListeners.keyAt(i), view);
+                if (viewForListener != null) viewForListener.setOnLongClickListener(null);
+            }
+            if (isSelectionModeEnabled) {
+                view.setOnClickListener(null);
+                view.setOnLongClickListener(null);
+            }
+            return true;
+        }
+
         private int getVariableForType(int position) {
             return map.get(list.get(position).getClass()).getBindingVariable();
         }
@@ -356,25 +794,18 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
          * If the total number of selected items is 0, disable selection mode
          *
          * @param view           the view in question
-         * @param position       the adapter position
-         * @param item           the data object for the view
          * @param clickListeners the clickListeners associated with the view
          */
-        private void setMultiSelectModeClickListener(final View view, final int position, final T item,
+        private void setMultiSelectModeClickListener(final View view,
                                                      @Nullable final SparseArray<OnClickListener<T>> clickListeners) {
             view.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view1) {
+                    final int position = getAdapterPosition();
+                    if (position == RecyclerView.NO_POSITION) return;
+                    final T item = list.get(position);
                     if (isSelectionModeActivated()) {
-                        toggleItemSelection(position);
-                        if (getTotalSelectedItems() == 0) {
-                            disableSelectionMode();
-                        }
-                        updateToolbar();
-                        if (selectionModeClickListener != null) {
-                            selectionModeClickListener.refreshViewState();
-                        }
-                        firePreviousItemClickListener(item, view);
+                        onSelectionModeClick(position, item, view);
                     } else {
                         if (isNullOrEmpty(clickListeners)) return;
 
@@ -398,23 +829,12 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
          * Update the toolbar
          *
          * @param view     the view in question
-         * @param position the adapter position
          */
-        private void setMultiSelectModeLongClickListener(final View view, final int position) {
+        private void setMultiSelectModeLongClickListener(final View view) {
             view.setOnLongClickListener(new View.OnLongClickListener() {
                 @Override
                 public boolean onLongClick(View LongClickedView) {
-                    if (position != RecyclerView.NO_POSITION) {
-                        enableSelectionMode(true);
-                        toggleItemSelection(position);
-                    }
-                    updateToolbar();
-                    if (selectionModeClickListener != null) {
-                        selectionModeClickListener.refreshViewState();
-                    }
-                    if (position != RecyclerView.NO_POSITION) {
-                        firePreviousItemClickListener(list.get(position), view);
-                    }
+                    onSelectionModeLongClick(getAdapterPosition(), view);
                     return true;
                 }
             });
@@ -424,12 +844,9 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
          * Attach click listeners to views
          *
          * @param clickListeners sparse array of viewId -> clickListener
-         * @param item           the data item
-         * @param position       the position
          * @param view           the view
          */
-        private void setClickListeners(@Nullable final SparseArray<OnClickListener<T>> clickListeners,
-                                       final T item, final int position, View view) {
+        private void setClickListeners(@Nullable final SparseArray<OnClickListener<T>> clickListeners, View view) {
             if (isNullOrEmpty(clickListeners)) return;
 
             for (int i = 0; i < clickListeners.size(); i++) {
@@ -439,6 +856,10 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
                     viewForListener.setOnClickListener(new View.OnClickListener() {
                         @Override
                         public void onClick(View view1) {
+                            // positions shift after binding, so read them at click time
+                            int position = getAdapterPosition();
+                            if (position == RecyclerView.NO_POSITION) return;
+                            T item = list.get(position);
                             clickListeners.valueAt(index).onClick(item, viewForListener, position);
                             firePreviousItemClickListener(item, viewForListener);
                         }
@@ -447,29 +868,13 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
             }
         }
 
-        private void firePreviousItemClickListener(T item, View view) {
-            if (previousItemClickListener != null) {
-                if (previouslyClickedItem != null && previouslyClickedView != null) {
-                    int index = list.indexOf(previouslyClickedItem);
-                    if (index != -1) {
-                        previousItemClickListener.onClick(previouslyClickedItem, previouslyClickedView, index);
-                    }
-                }
-                previouslyClickedItem = item;
-                previouslyClickedView = view;
-            }
-        }
-
         /**
          * Attach long click listeners to views
          *
          * @param clickListeners sparse array of viewId -> clickListener
-         * @param item           the data item
-         * @param position       the position
          * @param view           the view
          */
-        private void setLongClickListeners(@Nullable final SparseArray<OnLongClickListener<T>> clickListeners,
-                                           final T item, final int position, View view) {
+        private void setLongClickListeners(@Nullable final SparseArray<OnLongClickListener<T>> clickListeners, View view) {
             if (isNullOrEmpty(clickListeners)) return;
 
             for (int i = 0; i < clickListeners.size(); i++) {
@@ -479,6 +884,9 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
                     viewForListener.setOnLongClickListener(new View.OnLongClickListener() {
                         @Override
                         public boolean onLongClick(View view1) {
+                            int position = getAdapterPosition();
+                            if (position == RecyclerView.NO_POSITION) return false;
+                            T item = list.get(position);
                             clickListeners.valueAt(index).onLongClick(item, viewForListener, position);
                             firePreviousItemClickListener(item, viewForListener);
                             return true;
@@ -506,6 +914,140 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
 
     }
 
+    private void firePreviousItemClickListener(T item, View view) {
+        if (previousItemClickListener != null) {
+            if (previouslyClickedItem != null && previouslyClickedView != null) {
+                int index = list.indexOf(previouslyClickedItem);
+                if (index != -1) {
+                    previousItemClickListener.onClick(previouslyClickedItem, previouslyClickedView, index);
+                }
+            }
+            previouslyClickedItem = item;
+            previouslyClickedView = view;
+        }
+    }
+
+    /**
+     * Selects or deselects the item, leaving selection mode once nothing is selected, then
+     * refreshes the toolbar and fires the SelectionModeOnClickListener.
+     */
+    private void onSelectionModeClick(int position, T item, View view) {
+        toggleItemSelection(position);
+        if (getTotalSelectedItems() == 0) {
+            disableSelectionMode();
+        }
+        scheduleSelectionUpdate();
+        firePreviousItemClickListener(item, view);
+    }
+
+    /**
+     * Enters selection mode and toggles the item, then refreshes the toolbar and fires the
+     * SelectionModeOnClickListener.
+     */
+    private void onSelectionModeLongClick(int position, View view) {
+        if (position != RecyclerView.NO_POSITION) {
+            enableSelectionMode(true);
+            toggleItemSelection(position);
+        }
+        scheduleSelectionUpdate();
+        if (position != RecyclerView.NO_POSITION) {
+            firePreviousItemClickListener(list.get(position), view);
+        }
+    }
+
+    /**
+     * Routes a tap found by {@link DelegatedTouchDispatcher} to the selection mode logic or to the
+     * click listener registered for the tapped view.
+     *
+     * @param position the adapter position of the tapped item
+     * @param itemView the item view
+     * @param target   the deepest view under the tap
+     * @return true if the tap was handled
+     */
+    boolean dispatchClick(int position, View itemView, View target) {
+        if (position == RecyclerView.NO_POSITION || isPlaceholder(position)) return false;
+        if (isHandledByChild(clickListeners, itemView, target)) return false;
+        T item = list.get(position);
+        if (isSelectionModeEnabled && isSelectionModeActivated()) {
+            onSelectionModeClick(position, item, itemView);
+            return true;
+        }
+        // in selection mode only listeners on the item view itself are fired
+        View listenerView = findListenerView(clickListeners, itemView, isSelectionModeEnabled ? itemView : target);
+        if (listenerView == null) return false;
+        OnClickListener<T> listener = clickListeners.get(getListenerKey(clickListeners, itemView, listenerView));
+        listener.onClick(item, listenerView, position);
+        firePreviousItemClickListener(item, listenerView);
+        return true;
+    }
+
+    /**
+     * Routes a long press found by {@link DelegatedTouchDispatcher} to the selection mode logic or
+     * to the long click listener registered for the pressed view.
+     *
+     * @return true if the long press was handled
+     */
+    boolean dispatchLongClick(int position, View itemView, View target) {
+        if (position == RecyclerView.NO_POSITION || isPlaceholder(position)) return false;
+        if (isHandledByChild(longClickListeners, itemView, target)) return false;
+        if (isSelectionModeEnabled) {
+            onSelectionModeLongClick(position, itemView);
+            return true;
+        }
+        View listenerView = findListenerView(longClickListeners, itemView, target);
+        if (listenerView == null) return false;
+        T item = list.get(position);
+        OnLongClickListener<T> listener = longClickListeners.get(getListenerKey(longClickListeners, itemView, listenerView));
+        listener.onLongClick(item, listenerView, position);
+        firePreviousItemClickListener(item, listenerView);
+        return true;
+    }
+
+    /**
+     * Walks up from target to itemView and returns the first view with a listener in table.
+     */
+    @Nullable
+    private static View findListenerView(SparseArray<?> table, View itemView, View target) {
+        if (isNullOrEmpty(table)) return null;
+        View view = target;
+        while (view != null && view != itemView) {
+            if (view.getId() != View.NO_ID && table.indexOfKey(view.getId()) >= 0) {
+                return view;
+            }
+            view = view.getParent() instanceof View ? (View) view.getParent() : null;
+        }
+        if (table.indexOfKey(DEFAULT_LISTENER_INDEX) >= 0 || table.indexOfKey(itemView.getId()) >= 0) {
+            return itemView;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if a clickable or long clickable view between target and itemView, such as a
+     * CheckBox or Button, consumes the touch itself and has no listener in table
+     */
+    private static boolean isHandledByChild(@Nullable SparseArray<?> table, View itemView, View target) {
+        View view = target;
+        while (view != null && view != itemView) {
+            if (!isNullOrEmpty(table) && view.getId() != View.NO_ID && table.indexOfKey(view.getId()) >= 0) {
+                return false;
+            }
+            // View.onTouchEvent consumes the whole gesture if the view is either
+            if (view.isClickable() || view.isLongClickable()) {
+                return true;
+            }
+            view = view.getParent() instanceof View ? (View) view.getParent() : null;
+        }
+        return false;
+    }
+
+    private static int getListenerKey(SparseArray<?> table, View itemView, View listenerView) {
+        if (listenerView == itemView && table.indexOfKey(DEFAULT_LISTENER_INDEX) >= 0) {
+            return DEFAULT_LISTENER_INDEX;
+        }
+        return listenerView.getId();
+    }
+
     private static boolean isNullOrEmpty(@Nullable SparseArray collection) {
         return collection == null || collection.size() == 0;
     }
@@ -516,6 +1058,9 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
 
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        if (viewType == placeholderLayout && placeholderLayout != 0) {
+            return new ViewHolder(inflater.inflate(viewType, parent, false));
+        }
         ViewDataBinding binding = DataBindingUtil.inflate(inflater, viewType, parent, false);
         ViewHolder holder = new ViewHolder(binding);
         addOnRebindCallback(binding, recyclerView, holder.getAdapterPosition());
@@ -524,15 +1069,22 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
 
     @Override
     public void onBindViewHolder(BaseAdapter.ViewHolder holder, int position) {
+        recycledHolders.remove(holder);
         holder.bindTo(list.get(position), position, onBindListener, clickListeners, longClickListeners);
     }
 
     public void onBindViewHolder(ViewHolder holder, int position, List<T> payloads) {
-        if (isForDataBinding(payloads)) holder.binding.executePendingBindings();
+        if (holder.binding != null && isForDataBinding(payloads)) holder.binding.executePendingBindings();
         else onBindViewHolder(holder, position);
         holder.bindTo(list.get(position), position, onBindListener, clickListeners, longClickListeners);
     }
 
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        super.onViewRecycled(holder);
+        recycledHolders.add(holder);
+    }
+
     @Override
     public int getItemCount() {
         return list.size();
@@ -540,6 +1092,9 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
 
     @Override
     public int getItemViewType(int position) {
+        if (isPlaceholder(position)) {
+            return placeholderLayout;
+        }
         if (map != null) {
             final T dataModel = list.get(position);
             Pair<Integer, Integer> viewType = map.get(dataModel.getClass()).getLayoutBindingVariablePair(dataModel, position);
@@ -560,6 +1115,148 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         }
         this.recyclerView = recyclerView;
         inflater = LayoutInflater.from(recyclerView.getContext());
+        if (wasDetached && searchIndex != null) {
+            searchIndex.rebuild();
+        }
+        if (recyclerView.getLayoutManager() instanceof GridLayoutManager) {
+            GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+            // never replace a lookup the app installed itself unless span sizes were mapped
+            if (hasMappedSpanSizes()
+                    || layoutManager.getSpanSizeLookup().getClass() == GridLayoutManager.DefaultSpanSizeLookup.class) {
+                attachSpanSizeLookup(layoutManager);
+            }
+        }
+        if (maxRecycledViews != NO_RECYCLED_VIEW_BUDGET) {
+            applyRecycledViewBudget(maxRecycledViews);
+        }
+        if (trimMemoryCallback == null) {
+            trimMemoryCallback = new WeakReferenceTrimMemoryCallback(this, recyclerView.getContext());
+        }
+        if (itemTouchController != null) {
+            itemTouchHelper = new ItemTouchHelper(itemTouchController);
+            itemTouchHelper.attachToRecyclerView(recyclerView);
+        }
+        if (isTouchDispatchDelegated) {
+            touchDispatcher = new DelegatedTouchDispatcher(this, recyclerView);
+            recyclerView.addOnItemTouchListener(touchDispatcher);
+        }
+    }
+
+    /**
+     * Releases memory held by the adapter according to level, one of the
+     * {@link ComponentCallbacks2} TRIM_MEMORY constants. Called automatically while the adapter is
+     * attached to a RecyclerView.
+     * <p>
+     * From {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} on, pooled holders are unbound so
+     * their items can be collected and cached span indices are dropped. If a recycled view budget
+     * was configured, the pools of the mapped layouts are also shrunk to one view per type, or
+     * emptied from {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} on, and then allowed to
+     * grow back to the budget.
+     *
+     * @param level the trim level
+     */
+    public void onTrimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return;
+
+        for (ViewHolder holder : recycledHolders) {
+            if (holder.unbind()) {
+                releasedHolderCount++;
+            }
+        }
+        recycledHolders.clear();
+        if (spanSizeLookup != null) {
+            releasedCacheBytes += spanSizeLookup.trim();
+        }
+
+        // RecycledViewPool has no getter for its sizes, so they can only be restored to a known budget
+        if (maxRecycledViews == NO_RECYCLED_VIEW_BUDGET) return;
+        boolean isCritical = level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+        applyRecycledViewBudget(isCritical ? 0 : Math.min(1, maxRecycledViews));
+        // the pool dropped its extra views, allow it to grow back to the budget
+        applyRecycledViewBudget(maxRecycledViews);
+    }
+
+    /**
+     * @return the number of holders unbound by {@link #onTrimMemory(int)} so far
+     */
+    public int getReleasedHolderCount() {
+        return releasedHolderCount;
+    }
+
+    /**
+     * @return the approximate number of cache bytes released by {@link #onTrimMemory(int)} so far
+     */
+    public int getReleasedCacheBytes() {
+        return releasedCacheBytes;
+    }
+
+    private void applyRecycledViewBudget(int max) {
+        if (recyclerView == null || map == null) return;
+        RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+        if (placeholderLayout != 0) {
+            pool.setMaxRecycledViews(placeholderLayout, max);
+        }
+        for (LayoutBindingInfo<T> info : map.values()) {
+            for (int layout : info.getLayouts()) {
+                pool.setMaxRecycledViews(layout, max);
+            }
+        }
+    }
+
+    /**
+     * Installs a span size lookup on layoutManager that resolves span sizes from the mapped layouts
+     * and caches span and group indices. This is done automatically if the RecyclerView already has
+     * a GridLayoutManager when the adapter is attached, as long as span sizes were mapped or the
+     * layout manager still uses the default lookup. The replaced lookup is restored on detach.
+     *
+     * @param layoutManager the grid layout manager
+     */
+    public void attachSpanSizeLookup(@NonNull GridLayoutManager layoutManager) {
+        if (spanSizeLookup != null && spanSizeLookup.getLayoutManager() != layoutManager) {
+            detachSpanSizeLookup();
+        }
+        if (spanSizeLookup == null) {
+            spanSizeLookup = new CachedSpanSizeLookup(this, layoutManager);
+            registerAdapterDataObserver(spanSizeLookup.getInvalidationObserver());
+        }
+        if (layoutManager.getSpanSizeLookup() != spanSizeLookup) {
+            previousSpanSizeLookup = layoutManager.getSpanSizeLookup();
+            layoutManager.setSpanSizeLookup(spanSizeLookup);
+        }
+    }
+
+    private boolean hasMappedSpanSizes() {
+        if (map == null) return false;
+        for (LayoutBindingInfo<T> info : map.values()) {
+            if (info.hasSpanSizes()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Restores the span size lookup that was replaced, so the layout manager no longer queries this
+     * adapter, and stops invalidating the cache.
+     */
+    private void detachSpanSizeLookup() {
+        if (spanSizeLookup == null) return;
+        GridLayoutManager layoutManager = spanSizeLookup.getLayoutManager();
+        if (layoutManager.getSpanSizeLookup() == spanSizeLookup) {
+            layoutManager.setSpanSizeLookup(previousSpanSizeLookup != null
+                    ? previousSpanSizeLookup : new GridLayoutManager.DefaultSpanSizeLookup());
+        }
+        unregisterAdapterDataObserver(spanSizeLookup.getInvalidationObserver());
+        spanSizeLookup = null;
+        previousSpanSizeLookup = null;
+    }
+
+    /**
+     * @return the mapped span size of the item at position, may be {@link #SPAN_FULL}
+     */
+    int getSpanSize(int position) {
+        if (isPlaceholder(position)) return 1;
+        final T dataModel = list.get(position);
+        return map.get(dataModel.getClass()).getSpanSize(dataModel, position);
     }
 
     @Override
@@ -568,29 +1265,87 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         if (recyclerView != null && list instanceof ObservableList) {
             ((ObservableList<T>) list).removeOnListChangedCallback(onListChangedCallback);
         }
+        if (trimMemoryCallback != null) {
+            trimMemoryCallback.unregister();
+            trimMemoryCallback = null;
+        }
+        if (itemTouchHelper != null) {
+            itemTouchHelper.attachToRecyclerView(null);
+            itemTouchHelper = null;
+        }
+        if (itemTouchController != null) {
+            // the dismissed rows are already gone from the list, make sure they are not lost
+            itemTouchController.commitDismissals();
+        }
+        if (recyclerView != null) {
+            if (touchDispatcher != null) {
+                recyclerView.removeOnItemTouchListener(touchDispatcher);
+                touchDispatcher = null;
+            }
+            if (isSelectionUpdateScheduled) {
+                recyclerView.removeCallbacks(selectionUpdate);
+                dispatchSelectionUpdate();
+            }
+        }
+        detachSpanSizeLookup();
+        wasDetached = true;
         this.recyclerView = null;
     }
 
     private void toggleItemSelection(int position) {
+        T item = list.get(position);
         if (isItemSelected(position)) {
-            selectedItems.remove(list.get(position));
+            selectedItems.remove(item);
+            recordSelectionChange(item, false);
         } else {
             // Select the item
-            selectedItems.add(list.get(position));
+            selectedItems.add(item);
+            recordSelectionChange(item, true);
         }
         notifyItemChanged(position);
     }
 
+    /**
+     * Drops item from the selection, e.g. because it was swiped out of the list.
+     */
+    void deselectItem(T item) {
+        if (!selectedItems.remove(item)) return;
+        recordSelectionChange(item, false);
+        if (selectedItems.isEmpty()) {
+            disableSelectionMode();
+        }
+        scheduleSelectionUpdate();
+    }
+
     public void disableSelectionMode() {
-        for (T item : selectedItems) {
-            int index = list.indexOf(item);
-            if (index != -1) {
-                notifyItemChanged(index);
+        if (!selectedItems.isEmpty()) {
+            // one pass over the list and one notification for the affected range
+            HashSet<T> lookup = new HashSet<>(selectedItems);
+            int minIndex = -1;
+            int maxIndex = -1;
+            for (int i = 0; i < list.size(); i++) {
+                if (lookup.contains(list.get(i))) {
+                    if (minIndex == -1) minIndex = i;
+                    maxIndex = i;
+                }
+            }
+            if (minIndex != -1) {
+                notifyItemRangeChanged(minIndex, maxIndex - minIndex + 1);
+            }
+            for (T item : selectedItems) {
+                recordSelectionChange(item, false);
             }
         }
         selectedItems = new ArrayList<>();
         enableSelectionMode(false);
-        updateToolbar();
+        scheduleSelectionUpdate();
+    }
+
+    /**
+     * @return true if selection mode was enabled in the builder, whether or not it is active
+     */
+    boolean isSelectionModeEnabled() {
+        return isSelectionModeEnabled;
     }
 
     public boolean isSelectionModeActivated() {
@@ -620,6 +1375,28 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         return selectedItems;
     }
 
+    /**
+     * Returns an immutable view of the adapter's items that is safe to read on any thread. This is
+     * O(1) when the adapter was built with a {@link VersionedList}, otherwise the list is copied.
+     *
+     * @return the current items
+     */
+    @NonNull
+    public PersistentList<T> getSnapshot() {
+        if (list instanceof VersionedList) {
+            return ((VersionedList<T>) list).snapshot();
+        }
+        return PersistentList.from(list);
+    }
+
+    /**
+     * @return the search index configured with {@link Builder#searchIndex}, or null
+     */
+    @Nullable
+    public SearchIndex<T> getSearchIndex() {
+        return searchIndex;
+    }
+
     private void addOnRebindCallback(ViewDataBinding viewDataBinding, final RecyclerView recyclerView, final int position) {
         viewDataBinding.addOnRebindCallback(new OnRebindCallback() {
             @Override
@@ -631,37 +1408,271 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         });
     }
 
+    /**
+     * Selects every item of the backing list contained in itemsToSelect. The list is scanned once
+     * and a single range notification covers every changed position.
+     */
     private void selectItems(List<T> itemsToSelect) {
         if (isNullOrEmpty(itemsToSelect)) return;
-        for (T itemToSelect : itemsToSelect) {
-            int index = list.indexOf(itemToSelect);
-            if (index != -1) {
-                selectedItems.add(list.get(index));
-                notifyItemChanged(index);
+        HashSet<T> lookup = new HashSet<>(itemsToSelect);
+        int minIndex = -1;
+        int maxIndex = -1;
+        for (int i = 0; i < list.size(); i++) {
+            T item = list.get(i);
+            if (lookup.contains(item)) {
+                selectedItems.add(item);
+                recordSelectionChange(item, true);
+                if (minIndex == -1) minIndex = i;
+                maxIndex = i;
             }
         }
+        if (minIndex != -1) {
+            notifyItemRangeChanged(minIndex, maxIndex - minIndex + 1);
+        }
         enableSelectionMode(true);
     }
 
+    /**
+     * Saves the selected positions into outState. Positions are stored as run-length encoded
+     * [start, count] pairs in a single int array so that large selections (e.g. select all) stay
+     * well below the Bundle size limit and no model objects need to be parcelled.
+     *
+     * @param outState the bundle to write to
+     */
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        if (!isSelectionModeActivated() || isNullOrEmpty(selectedItems)) {
+            outState.remove(STATE_SELECTED_ITEMS);
+            return;
+        }
+        HashSet<T> lookup = new HashSet<>(selectedItems);
+        int[] ranges = new int[8];
+        int size = 0;
+        int start = -1;
+        for (int i = 0; i <= list.size(); i++) {
+            boolean selected = i < list.size() && lookup.contains(list.get(i));
+            if (selected && start == -1) {
+                start = i;
+            } else if (!selected && start != -1) {
+                if (size + 2 > ranges.length) {
+                    int[] grown = new int[ranges.length * 2];
+                    System.arraycopy(ranges, 0, grown, 0, size);
+                    ranges = grown;
+                }
+                ranges[size++] = start;
+                ranges[size++] = i - start;
+                start = -1;
+            }
+        }
+        int[] encoded = new int[size];
+        System.arraycopy(ranges, 0, encoded, 0, size);
+        outState.putIntArray(STATE_SELECTED_ITEMS, encoded);
+    }
+
+    /**
+     * Restores a selection written by {@link #onSaveInstanceState(Bundle)} in one bulk pass.
+     * Must be called once the backing list has been repopulated.
+     *
+     * @param savedInstanceState the bundle to read from, may be null
+     */
+    public void onRestoreInstanceState(@Nullable Bundle savedInstanceState) {
+        if (savedInstanceState == null) return;
+        int[] ranges = savedInstanceState.getIntArray(STATE_SELECTED_ITEMS);
+        if (ranges == null || ranges.length == 0) return;
+
+        HashSet<T> lookup = new HashSet<>(selectedItems);
+        int minIndex = -1;
+        int maxIndex = -1;
+        for (int r = 0; r + 1 < ranges.length; r += 2) {
+            int end = Math.min(ranges[r] + ranges[r + 1], list.size());
+            for (int i = Math.max(ranges[r], 0); i < end; i++) {
+                T item = list.get(i);
+                if (lookup.add(item)) {
+                    selectedItems.add(item);
+                    recordSelectionChange(item, true);
+                }
+                if (minIndex == -1 || i < minIndex) minIndex = i;
+                if (i > maxIndex) maxIndex = i;
+            }
+        }
+        if (minIndex == -1) return;
+
+        enableSelectionMode(true);
+        notifyItemRangeChanged(minIndex, maxIndex - minIndex + 1);
+        scheduleSelectionUpdate();
+    }
+
     public void deleteSelectedItems(@NonNull OnItemDeletedListener<T> callback) {
         if (!isNullOrEmpty(selectedItems)) {
             callback.onItemsDeleted(selectedItems);
-            int minIndex = -1;
-            for (T item : selectedItems) {
-                int index = list.indexOf(item);
-                if (index != -1) {
-                    minIndex = index;
-                    list.remove(index);
-                    notifyItemRemoved(index);
+            removeItems(selectedItems);
+            disableSelectionMode();
+        }
+    }
+
+    /**
+     * Removes the given items from the list in a single compacting pass and notifies each
+     * contiguous removed range once.
+     *
+     * @param items the items to remove
+     */
+    void removeItems(Collection<T> items) {
+        HashSet<T> lookup = new HashSet<>(items);
+        int[] positions = new int[Math.min(lookup.size(), list.size())];
+        int count = 0;
+        for (int i = 0; i < list.size() && count < positions.length; i++) {
+            if (lookup.contains(list.get(i))) {
+                positions[count++] = i;
+            }
+        }
+        removePositions(positions, count);
+    }
+
+    /**
+     * Removes the items at the given ascending positions. A single contiguous run is removed with
+     * one {@link List#remove} or {@code subList(...).clear()}. Scattered positions on a random access
+     * list are compacted with {@link List#set} and the tail is cleared once, so the cost is linear in
+     * the list size regardless of how many items are removed; other lists have each run cleared from
+     * the end.
+     *
+     * @param positions ascending adapter positions
+     * @param count     the number of valid entries in positions
+     */
+    void removePositions(int[] positions, int count) {
+        if (count == 0) return;
+        boolean isContiguous = positions[count - 1] - positions[0] == count - 1;
+        isSuppressingListCallbacks = true;
+        try {
+            if (count == 1) {
+                list.remove(positions[0]);
+            } else if (isContiguous) {
+                list.subList(positions[0], positions[0] + count).clear();
+            } else if (list instanceof RandomAccess) {
+                compact(positions, count);
+            } else {
+                int runEnd = count - 1;
+                for (int i = count - 1; i >= 0; i--) {
+                    if (i == 0 || positions[i - 1] != positions[i] - 1) {
+                        list.subList(positions[i], positions[runEnd] + 1).clear();
+                        runEnd = i - 1;
+                    }
                 }
             }
-            if (minIndex > -1) {
-                notifyItemRangeChanged(minIndex, list.size());
+        } finally {
+            isSuppressingListCallbacks = false;
+        }
+
+        // notify contiguous runs from the end so earlier positions stay valid
+        int runEnd = count - 1;
+        for (int i = count - 1; i >= 0; i--) {
+            if (i == 0 || positions[i - 1] != positions[i] - 1) {
+                notifyItemRangeRemoved(positions[i], runEnd - i + 1);
+                runEnd = i - 1;
             }
-            disableSelectionMode();
         }
     }
 
+    private void compact(int[] positions, int count) {
+        int size = list.size();
+        int write = positions[0];
+        int next = 0;
+        for (int read = positions[0]; read < size; read++) {
+            if (next < count && positions[next] == read) {
+                next++;
+                continue;
+            }
+            list.set(write++, list.get(read));
+        }
+        list.subList(write, size).clear();
+    }
+
+    /**
+     * Moves the item at fromPosition to toPosition by swapping neighbours, which costs one
+     * {@link List#set} pair per position crossed instead of shifting the whole list.
+     */
+    void moveItem(int fromPosition, int toPosition) {
+        if (fromPosition == toPosition) return;
+        isSuppressingListCallbacks = true;
+        try {
+            int step = fromPosition < toPosition ? 1 : -1;
+            for (int i = fromPosition; i != toPosition; i += step) {
+                T item = list.get(i);
+                list.set(i, list.get(i + step));
+                list.set(i + step, item);
+            }
+        } finally {
+            isSuppressingListCallbacks = false;
+        }
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    T getItem(int position) {
+        return list.get(position);
+    }
+
+    /**
+     * @return true if the item at position is shown with the placeholder layout
+     */
+    private boolean isPlaceholder(int position) {
+        if (placeholderLayout == 0) return false;
+        T item = list.get(position);
+        return item == null || (pendingItemPredicate != null && pendingItemPredicate.isPending(item, position));
+    }
+
+    /**
+     * Replaces the items starting at positionStart, typically placeholders whose data has
+     * arrived, and notifies the whole range once instead of once per item. Placeholders change
+     * view type when their item arrives, so the affected rows are rebound with their real layout.
+     *
+     * @param positionStart the first position to replace
+     * @param items         the loaded items
+     * @throws IndexOutOfBoundsException if the items do not fit into the list at positionStart,
+     *                                   in which case the list is left unchanged
+     */
+    public void setLoadedItems(int positionStart, @NonNull List<T> items) {
+        if (positionStart < 0 || positionStart + items.size() > list.size()) {
+            throw new IndexOutOfBoundsException("Range [" + positionStart + ", "
+                    + (positionStart + items.size()) + ") of size " + list.size());
+        }
+        if (items.isEmpty()) return;
+        isSuppressingListCallbacks = true;
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                list.set(positionStart + i, items.get(i));
+            }
+        } finally {
+            isSuppressingListCallbacks = false;
+        }
+        notifyItemRangeChanged(positionStart, items.size());
+    }
+
+    /**
+     * Restores the items dismissed by swiping since the last commit, at their original positions.
+     */
+    public void undoDismissedItems() {
+        if (itemTouchController != null) {
+            itemTouchController.undoDismissals();
+        }
+    }
+
+    /**
+     * Passes the items dismissed by swiping since the last commit to the swipe listener in one batch.
+     */
+    public void commitDismissedItems() {
+        if (itemTouchController != null) {
+            itemTouchController.commitDismissals();
+        }
+    }
+
+    void insertItem(int position, T item) {
+        isSuppressingListCallbacks = true;
+        try {
+            list.add(position, item);
+        } finally {
+            isSuppressingListCallbacks = false;
+        }
+        notifyItemInserted(position);
+    }
+
     private Boolean isForDataBinding(List<T> payloads) {
         if (payloads == null || payloads.size() == 0) return false;
         for (T object : payloads) {
@@ -678,6 +1689,49 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
         return selectedItems.contains(list.get(position));
     }
 
+    /**
+     * Forwards trim memory events to the adapter. The application context outlives the adapter and
+     * onDetachedFromRecyclerView is not guaranteed to run when the Activity is destroyed, so the
+     * adapter is only referenced weakly and the callback unregisters itself once it is collected.
+     */
+    private static class WeakReferenceTrimMemoryCallback implements ComponentCallbacks2 {
+
+        private final WeakReference<BaseAdapter<?>> reference;
+        private final Context applicationContext;
+
+        WeakReferenceTrimMemoryCallback(BaseAdapter<?> adapter, Context context) {
+            reference = new WeakReference<BaseAdapter<?>>(adapter);
+            applicationContext = context.getApplicationContext();
+            applicationContext.registerComponentCallbacks(this);
+        }
+
+        void unregister() {
+            applicationContext.unregisterComponentCallbacks(this);
+        }
+
+        private BaseAdapter<?> getAdapter() {
+            BaseAdapter<?> adapter = reference.get();
+            if (adapter == null) unregister();
+            return adapter;
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            BaseAdapter<?> adapter = getAdapter();
+            if (adapter != null) adapter.onTrimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            BaseAdapter<?> adapter = getAdapter();
+            if (adapter != null) adapter.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    }
+
     private class WeakReferenceOnListChangedCallback extends ObservableList.OnListChangedCallback<ObservableList<T>> {
 
         private WeakReference<BaseAdapter<T>> reference;
@@ -686,10 +1740,14 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
             reference = new WeakReference<>(adapter);
         }
 
+        /**
+         * @return the adapter, or null if it is gone or is notifying about its own changes
+         */
         private BaseAdapter<T> getAdapter() {
 
             if (Thread.currentThread().getId() == Looper.getMainLooper().getThread().getId()) {
-                return reference.get();
+                BaseAdapter<T> adapter = reference.get();
+                return adapter == null || adapter.isSuppressingListCallbacks ? null : adapter;
             } else {
                 throw new IllegalStateException("You cannot modify the ObservableList on a background thread");
             }
@@ -697,29 +1755,35 @@ public class BaseAdapter<T> extends RecyclerView.Adapter<BaseAdapter.ViewHolder>
 
         @Override
         public void onChanged(ObservableList<T> t) {
-            getAdapter().notifyDataSetChanged();
+            BaseAdapter<T> adapter = getAdapter();
+            if (adapter != null) adapter.notifyDataSetChanged();
         }
 
         @Override
         public void onItemRangeChanged(ObservableList<T> t, int from, int count) {
-            getAdapter().notifyItemRangeChanged(from, count);
+            BaseAdapter<T> adapter = getAdapter();
+            if (adapter != null) adapter.notifyItemRangeChanged(from, count);
         }
 
         @Override
         public void onItemRangeInserted(ObservableList<T> t, int from, int count) {
-            getAdapter().notifyItemRangeInserted(from, count);
+            BaseAdapter<T> adapter = getAdapter();
+            if (adapter != null) adapter.notifyItemRangeInserted(from, count);
         }
 
         @Override
         public void onItemRangeMoved(ObservableList<T> list, int from, int to, int count) {
+            BaseAdapter<T> adapter = getAdapter();
+            if (adapter == null) return;
             for (int i = 0; i < count; i++) {
-                getAdapter().notifyItemMoved(from + i, to + i);
+                adapter.notifyItemMoved(from + i, to + i);
             }
         }
 
         @Override
         public void onItemRangeRemoved(ObservableList<T> t, int from, int count) {
-            getAdapter().notifyItemRangeRemoved(from, count);
+            BaseAdapter<T> adapter = getAdapter();
+            if (adapter != null) adapter.notifyItemRangeRemoved(from, count);
         }
     }
 
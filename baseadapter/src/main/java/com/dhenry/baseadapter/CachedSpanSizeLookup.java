@@ -0,0 +1,163 @@
+package com.dhenry.baseadapter;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * SpanSizeLookup backed by the span sizes mapped in {@link BaseAdapter.Builder}.
+ * <p>
+ * Span sizes, span indices and span group indices are computed incrementally and cached per
+ * position. GridLayoutManager queries these many times per layout pass, so each position is only
+ * resolved once until a change notification touches it. Since the span index of a position
+ * depends on all positions before it, a change at position p invalidates the cache from p onwards
+ * and leaves everything before p intact.
+ */
+class CachedSpanSizeLookup extends GridLayoutManager.SpanSizeLookup {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final BaseAdapter<?> adapter;
+    private final GridLayoutManager layoutManager;
+
+    // cached values for positions [0, validCount)
+    private int[] spanSizes = new int[INITIAL_CAPACITY];
+    private int[] spanIndices = new int[INITIAL_CAPACITY];
+    private int[] groupIndices = new int[INITIAL_CAPACITY];
+    private int validCount = 0;
+
+    // the span count the cached indices were computed for
+    private int cachedSpanCount = -1;
+
+    private final RecyclerView.AdapterDataObserver invalidationObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            invalidateFrom(0);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            invalidateFrom(positionStart);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            invalidateFrom(positionStart);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            invalidateFrom(positionStart);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            invalidateFrom(Math.min(fromPosition, toPosition));
+        }
+    };
+
+    CachedSpanSizeLookup(@NonNull BaseAdapter<?> adapter, @NonNull GridLayoutManager layoutManager) {
+        this.adapter = adapter;
+        this.layoutManager = layoutManager;
+    }
+
+    GridLayoutManager getLayoutManager() {
+        return layoutManager;
+    }
+
+    RecyclerView.AdapterDataObserver getInvalidationObserver() {
+        return invalidationObserver;
+    }
+
+    @Override
+    public int getSpanSize(int position) {
+        int spanCount = layoutManager.getSpanCount();
+        ensureCached(position, spanCount);
+        return spanSizes[position];
+    }
+
+    @Override
+    public int getSpanIndex(int position, int spanCount) {
+        ensureCached(position, spanCount);
+        return spanIndices[position];
+    }
+
+    @Override
+    public int getSpanGroupIndex(int adapterPosition, int spanCount) {
+        ensureCached(adapterPosition, spanCount);
+        return groupIndices[adapterPosition];
+    }
+
+    /**
+     * Drops all cached values and shrinks the cache back to its initial capacity.
+     *
+     * @return the approximate number of bytes released
+     */
+    int trim() {
+        int released = (spanSizes.length - INITIAL_CAPACITY) * 3 * 4;
+        spanSizes = new int[INITIAL_CAPACITY];
+        spanIndices = new int[INITIAL_CAPACITY];
+        groupIndices = new int[INITIAL_CAPACITY];
+        validCount = 0;
+        return Math.max(released, 0);
+    }
+
+    private void invalidateFrom(int position) {
+        if (position < validCount) {
+            validCount = Math.max(position, 0);
+        }
+    }
+
+    /**
+     * Extends the cache so that it covers position, computing only positions not cached yet.
+     */
+    private void ensureCached(int position, int spanCount) {
+        if (spanCount != cachedSpanCount) {
+            cachedSpanCount = spanCount;
+            validCount = 0;
+        }
+        if (position < validCount) return;
+
+        ensureCapacity(position + 1);
+        for (int i = validCount; i <= position; i++) {
+            int size = resolveSpanSize(i, spanCount);
+            spanSizes[i] = size;
+            if (i == 0) {
+                spanIndices[i] = 0;
+                groupIndices[i] = 0;
+            } else {
+                int candidate = spanIndices[i - 1] + spanSizes[i - 1];
+                if (candidate + size > spanCount) {
+                    spanIndices[i] = 0;
+                    groupIndices[i] = groupIndices[i - 1] + 1;
+                } else {
+                    spanIndices[i] = candidate;
+                    groupIndices[i] = groupIndices[i - 1];
+                }
+            }
+        }
+        validCount = position + 1;
+    }
+
+    private int resolveSpanSize(int position, int spanCount) {
+        int size = adapter.getSpanSize(position);
+        if (size == BaseAdapter.SPAN_FULL || size > spanCount) {
+            return spanCount;
+        }
+        return Math.max(size, 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= spanSizes.length) return;
+        int newCapacity = Math.max(capacity, spanSizes.length * 2);
+        spanSizes = grow(spanSizes, newCapacity);
+        spanIndices = grow(spanIndices, newCapacity);
+        groupIndices = grow(groupIndices, newCapacity);
+    }
+
+    private int[] grow(int[] array, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, validCount);
+        return grown;
+    }
+}
@@ -0,0 +1,103 @@
+package com.dhenry.baseadapter;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.view.GestureDetector;
+import android.view.HapticFeedbackConstants;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Single RecyclerView touch listener behind {@link BaseAdapter.Builder#delegateTouchDispatch()}.
+ * <p>
+ * Taps and long presses are hit-tested against the item views and handed to the adapter, which
+ * routes them to the registered listeners or the selection mode logic. Touch events are only
+ * observed, never intercepted, so child views keep their own touch handling. Gestures that start
+ * while the list is scrolling only stop the scroll and are not dispatched.
+ */
+class DelegatedTouchDispatcher extends GestureDetector.SimpleOnGestureListener
+        implements RecyclerView.OnItemTouchListener {
+
+    private final BaseAdapter<?> adapter;
+    private final RecyclerView recyclerView;
+    private final GestureDetector gestureDetector;
+
+    // whether the list was scrolling or settling when the current gesture started
+    private boolean wasScrollingOnDown = false;
+
+    DelegatedTouchDispatcher(@NonNull BaseAdapter<?> adapter, @NonNull RecyclerView recyclerView) {
+        this.adapter = adapter;
+        this.recyclerView = recyclerView;
+        this.gestureDetector = new GestureDetector(recyclerView.getContext(), this);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(RecyclerView rv, MotionEvent e) {
+        if (e.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            wasScrollingOnDown = rv.getScrollState() != RecyclerView.SCROLL_STATE_IDLE;
+        }
+        gestureDetector.onTouchEvent(e);
+        return false;
+    }
+
+    @Override
+    public void onTouchEvent(RecyclerView rv, MotionEvent e) {
+    }
+
+    @Override
+    public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+    }
+
+    @Override
+    public boolean onSingleTapUp(MotionEvent e) {
+        if (wasScrollingOnDown) return false;
+        View itemView = recyclerView.findChildViewUnder(e.getX(), e.getY());
+        if (itemView == null) return false;
+        int position = recyclerView.getChildAdapterPosition(itemView);
+        View target = findTargetView(itemView, e);
+        if (adapter.dispatchClick(position, itemView, target)) {
+            itemView.playSoundEffect(SoundEffectConstants.CLICK);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void onLongPress(MotionEvent e) {
+        if (wasScrollingOnDown) return;
+        View itemView = recyclerView.findChildViewUnder(e.getX(), e.getY());
+        if (itemView == null) return;
+        int position = recyclerView.getChildAdapterPosition(itemView);
+        View target = findTargetView(itemView, e);
+        if (adapter.dispatchLongClick(position, itemView, target)) {
+            itemView.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+        }
+    }
+
+    private static View findTargetView(View itemView, MotionEvent e) {
+        return findDeepestChildUnder(itemView, e.getX() - itemView.getLeft() - itemView.getTranslationX(),
+                e.getY() - itemView.getTop() - itemView.getTranslationY());
+    }
+
+    /**
+     * @param x horizontal coordinate relative to view
+     * @param y vertical coordinate relative to view
+     * @return the deepest visible descendant of view containing the point, or view itself
+     */
+    private static View findDeepestChildUnder(View view, float x, float y) {
+        if (!(view instanceof ViewGroup)) return view;
+        ViewGroup group = (ViewGroup) view;
+        for (int i = group.getChildCount() - 1; i >= 0; i--) {
+            View child = group.getChildAt(i);
+            if (child.getVisibility() != View.VISIBLE) continue;
+            float childX = x + group.getScrollX() - child.getLeft() - child.getTranslationX();
+            float childY = y + group.getScrollY() - child.getTop() - child.getTranslationY();
+            if (childX >= 0 && childY >= 0 && childX < child.getWidth() && childY < child.getHeight()) {
+                return findDeepestChildUnder(child, childX, childY);
+            }
+        }
+        return view;
+    }
+}
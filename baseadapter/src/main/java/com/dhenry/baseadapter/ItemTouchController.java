@@ -0,0 +1,163 @@
+package com.dhenry.baseadapter;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.helper.ItemTouchHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ItemTouchHelper callback behind {@link BaseAdapter.Builder#dragToReorder} and
+ * {@link BaseAdapter.Builder#swipeToDismiss}.
+ * <p>
+ * Drag steps are applied to the list as they happen, but only the net move of the whole gesture
+ * is reported to the {@link BaseAdapter.OnItemMovedListener}. Swiped items are removed at once
+ * and held back so they can be restored, until they are committed to the
+ * {@link BaseAdapter.OnItemDeletedListener} in one batch. The recorded positions are only valid
+ * while nothing else changes the list structure, so any other insert, removal or move commits the
+ * pending dismissals and nothing is left to undo. They are also committed when the adapter is
+ * detached, so dismissals are never lost.
+ */
+class ItemTouchController<T> extends ItemTouchHelper.Callback {
+
+    private final BaseAdapter<T> adapter;
+    private final boolean isDragEnabled;
+    private final BaseAdapter.OnItemMovedListener<T> onItemMovedListener;
+    private final BaseAdapter.OnItemDeletedListener<T> onItemDismissedListener;
+
+    // the position the current drag started at, NO_POSITION when not dragging
+    private int dragFromPosition = RecyclerView.NO_POSITION;
+    private int dragToPosition = RecyclerView.NO_POSITION;
+
+    // dismissed items and the positions they were removed from, in dismissal order
+    private final List<T> dismissedItems = new ArrayList<>();
+    private final List<Integer> dismissedPositions = new ArrayList<>();
+
+    // set while the controller changes the list itself, so its own notifications keep the dismissals
+    private boolean isApplyingDismissal = false;
+
+    private final RecyclerView.AdapterDataObserver invalidationObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            onStructureChanged();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onStructureChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onStructureChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onStructureChanged();
+        }
+    };
+
+    ItemTouchController(@NonNull BaseAdapter<T> adapter, boolean isDragEnabled,
+                        @Nullable BaseAdapter.OnItemMovedListener<T> onItemMovedListener,
+                        @Nullable BaseAdapter.OnItemDeletedListener<T> onItemDismissedListener) {
+        this.adapter = adapter;
+        this.isDragEnabled = isDragEnabled;
+        this.onItemMovedListener = onItemMovedListener;
+        this.onItemDismissedListener = onItemDismissedListener;
+        adapter.registerAdapterDataObserver(invalidationObserver);
+    }
+
+    @Override
+    public int getMovementFlags(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
+        int dragFlags = isDragEnabled ? ItemTouchHelper.UP | ItemTouchHelper.DOWN : 0;
+        if (isDragEnabled && recyclerView.getLayoutManager() instanceof GridLayoutManager) {
+            dragFlags |= ItemTouchHelper.START | ItemTouchHelper.END;
+        }
+        int swipeFlags = onItemDismissedListener != null ? ItemTouchHelper.START | ItemTouchHelper.END : 0;
+        return makeMovementFlags(dragFlags, swipeFlags);
+    }
+
+    @Override
+    public boolean isLongPressDragEnabled() {
+        // long press belongs to selection mode when it is enabled, both must not fire at once
+        return isDragEnabled && !adapter.isSelectionModeEnabled();
+    }
+
+    @Override
+    public boolean onMove(RecyclerView recyclerView, RecyclerView.ViewHolder source, RecyclerView.ViewHolder target) {
+        int from = source.getAdapterPosition();
+        int to = target.getAdapterPosition();
+        if (from == RecyclerView.NO_POSITION || to == RecyclerView.NO_POSITION) return false;
+        if (dragFromPosition == RecyclerView.NO_POSITION) {
+            dragFromPosition = from;
+        }
+        dragToPosition = to;
+        adapter.moveItem(from, to);
+        return true;
+    }
+
+    @Override
+    public void onSwiped(RecyclerView.ViewHolder viewHolder, int direction) {
+        int position = viewHolder.getAdapterPosition();
+        if (position == RecyclerView.NO_POSITION) return;
+        T item = adapter.getItem(position);
+        dismissedItems.add(item);
+        dismissedPositions.add(position);
+        isApplyingDismissal = true;
+        try {
+            adapter.removePositions(new int[]{position}, 1);
+        } finally {
+            isApplyingDismissal = false;
+        }
+        adapter.deselectItem(item);
+    }
+
+    @Override
+    public void clearView(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
+        super.clearView(recyclerView, viewHolder);
+        if (dragFromPosition == RecyclerView.NO_POSITION) return;
+
+        int from = dragFromPosition;
+        int to = dragToPosition;
+        dragFromPosition = RecyclerView.NO_POSITION;
+        dragToPosition = RecyclerView.NO_POSITION;
+        if (from == to) return;
+
+        if (onItemMovedListener != null) {
+            onItemMovedListener.onItemMoved(adapter.getItem(to), from, to);
+        }
+    }
+
+    void undoDismissals() {
+        // reinsert in reverse so each recorded position is valid again when it is used
+        isApplyingDismissal = true;
+        try {
+            for (int i = dismissedItems.size() - 1; i >= 0; i--) {
+                int position = Math.min(dismissedPositions.get(i), adapter.getItemCount());
+                adapter.insertItem(position, dismissedItems.get(i));
+            }
+        } finally {
+            isApplyingDismissal = false;
+        }
+        dismissedItems.clear();
+        dismissedPositions.clear();
+    }
+
+    void commitDismissals() {
+        if (dismissedItems.isEmpty()) return;
+        List<T> items = new ArrayList<>(dismissedItems);
+        dismissedItems.clear();
+        dismissedPositions.clear();
+        onItemDismissedListener.onItemsDeleted(items);
+    }
+
+    private void onStructureChanged() {
+        if (!isApplyingDismissal) {
+            commitDismissals();
+        }
+    }
+}
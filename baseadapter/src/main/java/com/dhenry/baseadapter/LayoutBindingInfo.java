@@ -17,15 +17,31 @@ class LayoutBindingInfo<T> {
     // the binding variable associated with the layouts
     private final int bindingVariable;
 
+    // the grid span size of each layout, parallel to layouts
+    private final int[] spanSizes;
+
     LayoutBindingInfo(int[] layouts, int variable, Function<T, Integer, Integer> viewTypeFunction) {
+        this(layouts, null, variable, viewTypeFunction);
+    }
+
+    LayoutBindingInfo(int[] layouts, @Nullable int[] spanSizes, int variable,
+                      Function<T, Integer, Integer> viewTypeFunction) {
+        if (spanSizes != null && spanSizes.length != layouts.length) {
+            throw new IllegalArgumentException("A span size must be provided for each layout");
+        }
         this.layouts = layouts;
+        this.spanSizes = spanSizes;
         this.bindingVariable = variable;
         this.viewTypeFunction = viewTypeFunction;
     }
 
-
     LayoutBindingInfo(int layout, int variable) {
+        this(layout, variable, 1);
+    }
+
+    LayoutBindingInfo(int layout, int variable, int spanSize) {
         this.layouts = new int[]{layout};
+        this.spanSizes = new int[]{spanSize};
         this.bindingVariable = variable;
         this.viewTypeFunction = new Function<T, Integer, Integer>() {
             @Override
@@ -46,6 +62,35 @@ class LayoutBindingInfo<T> {
         return null;
     }
 
+    /**
+     * @return the span size of the layout chosen for dataModel, 1 if none was mapped or
+     * {@link BaseAdapter#SPAN_FULL} for full width items
+     */
+    int getSpanSize(@Nullable final T dataModel, @Nullable final Integer itemIndex) {
+        if (dataModel != null && spanSizes != null) {
+            Integer viewTypeIndex = viewTypeFunction.getViewType(dataModel, itemIndex);
+            if (viewTypeIndex < spanSizes.length) {
+                return spanSizes[viewTypeIndex];
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @return true if any layout was mapped with a span size other than 1
+     */
+    boolean hasSpanSizes() {
+        if (spanSizes == null) return false;
+        for (int spanSize : spanSizes) {
+            if (spanSize != 1) return true;
+        }
+        return false;
+    }
+
+    int[] getLayouts() {
+        return layouts;
+    }
+
     int getBindingVariable() {
         return bindingVariable;
     }
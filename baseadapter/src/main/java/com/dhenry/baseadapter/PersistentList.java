@@ -0,0 +1,402 @@
+package com.dhenry.baseadapter;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable list backed by a size-annotated AVL tree.
+ * <p>
+ * {@link #with}, {@link #plus}, {@link #minus} and {@link #move} return a new version in
+ * O(log n) by copying only the path to the touched element, so versions share all other nodes and
+ * holding on to one is free. {@link #minusRange} splits the tree around the range and
+ * {@link #plusAll} joins a balanced subtree in, so bulk changes cost O(log n) and
+ * O(k + log n). Any version can be read from any thread without locking.
+ * <p>
+ * Each derived version remembers the change that produced it, so the changes between an older
+ * version and a newer one can be replayed as range notifications, see {@link VersionedList}.
+ */
+public final class PersistentList<T> extends AbstractList<T> {
+
+    // versions further apart than this are reported as a full change
+    private static final int MAX_LOG_DEPTH = 4096;
+
+    private static final PersistentList EMPTY = new PersistentList<>(null, LogEntry.root());
+
+    private final Node<T> root;
+
+    // the change that produced this version, or a marker without a change for a root version
+    private final LogEntry log;
+
+    private PersistentList(@Nullable Node<T> root, @NonNull LogEntry log) {
+        this.root = root;
+        this.log = log;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    /**
+     * Builds a balanced list from items in O(n).
+     */
+    public static <T> PersistentList<T> from(@NonNull Collection<? extends T> items) {
+        if (items.isEmpty()) return empty();
+        Object[] array = items.toArray();
+        return new PersistentList<>(PersistentList.<T>build(array, 0, array.length), LogEntry.root());
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public T get(int index) {
+        checkIndex(index, size());
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.value;
+            }
+        }
+    }
+
+    /**
+     * @return a new version with the element at index replaced by item
+     */
+    public PersistentList<T> with(int index, T item) {
+        checkIndex(index, size());
+        return derive(set(root, index, item), new Change(Change.CHANGED, index, 1, index));
+    }
+
+    /**
+     * @return a new version with item appended
+     */
+    public PersistentList<T> plus(T item) {
+        return plus(size(), item);
+    }
+
+    /**
+     * @return a new version with item inserted at index
+     */
+    public PersistentList<T> plus(int index, T item) {
+        checkIndex(index, size() + 1);
+        return derive(insert(root, index, item), new Change(Change.INSERTED, index, 1, index));
+    }
+
+    /**
+     * @return a new version with items inserted at index, recorded as a single range change
+     */
+    public PersistentList<T> plusAll(int index, @NonNull Collection<? extends T> items) {
+        checkIndex(index, size() + 1);
+        if (items.isEmpty()) return this;
+        Object[] array = items.toArray();
+        Node<T> inserted = build(array, 0, array.length);
+        Node<T> node = concat(concat(take(root, index), inserted), drop(root, index));
+        return derive(node, new Change(Change.INSERTED, index, array.length, index));
+    }
+
+    /**
+     * @return a new version without the element at index
+     */
+    public PersistentList<T> minus(int index) {
+        return minusRange(index, index + 1);
+    }
+
+    /**
+     * @return a new version without the elements in [fromIndex, toIndex), recorded as a single
+     * range change
+     */
+    public PersistentList<T> minusRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + ") of size " + size());
+        }
+        if (fromIndex == toIndex) return this;
+        Change change = new Change(Change.REMOVED, fromIndex, toIndex - fromIndex, fromIndex);
+        if (fromIndex == 0 && toIndex == size()) {
+            return derive(null, change);
+        }
+        return derive(concat(take(root, fromIndex), drop(root, toIndex)), change);
+    }
+
+    /**
+     * @return a new version with the element at fromIndex moved to toIndex
+     */
+    public PersistentList<T> move(int fromIndex, int toIndex) {
+        checkIndex(fromIndex, size());
+        checkIndex(toIndex, size());
+        if (fromIndex == toIndex) return this;
+        T item = get(fromIndex);
+        Node<T> node = insert(remove(root, fromIndex), toIndex, item);
+        return derive(node, new Change(Change.MOVED, fromIndex, 1, toIndex));
+    }
+
+    @NonNull
+    @Override
+    public Iterator<T> iterator() {
+        return new TreeIterator<>(root);
+    }
+
+    /**
+     * @param older a version this list was derived from
+     * @return the changes that turn older into this version, oldest first, or null if older is
+     * not an ancestor within the retained change log
+     */
+    @Nullable
+    List<Change> changesSince(@NonNull PersistentList<T> older) {
+        if (older == this) return Collections.emptyList();
+        List<Change> changes = new ArrayList<>();
+        LogEntry entry = log;
+        while (entry != older.log) {
+            if (entry == null || entry.change == null) return null;
+            changes.add(entry.change);
+            entry = entry.previous;
+        }
+        Collections.reverse(changes);
+        return changes;
+    }
+
+    private PersistentList<T> derive(Node<T> newRoot, Change change) {
+        if (log.depth >= MAX_LOG_DEPTH) {
+            // start a new log so old entries can be collected
+            return new PersistentList<>(newRoot, new LogEntry(null, 0, change));
+        }
+        return new PersistentList<>(newRoot, new LogEntry(log, log.depth + 1, change));
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of size " + size);
+        }
+    }
+
+    /**
+     * A structural change between two consecutive versions.
+     */
+    static final class Change {
+        static final int CHANGED = 0;
+        static final int INSERTED = 1;
+        static final int REMOVED = 2;
+        static final int MOVED = 3;
+
+        final int type;
+        final int position;
+        final int count;
+        final int toPosition;
+
+        Change(int type, int position, int count, int toPosition) {
+            this.type = type;
+            this.position = position;
+            this.count = count;
+            this.toPosition = toPosition;
+        }
+    }
+
+    /**
+     * Links a version to the change that produced it. Entries never reference tree nodes, so the
+     * log does not keep old versions alive.
+     */
+    private static final class LogEntry {
+        final LogEntry previous;
+        final int depth;
+        final Change change;
+
+        LogEntry(LogEntry previous, int depth, Change change) {
+            this.previous = previous;
+            this.depth = depth;
+            this.change = change;
+        }
+
+        static LogEntry root() {
+            return new LogEntry(null, 0, null);
+        }
+    }
+
+    private static final class Node<T> {
+        final T value;
+        final Node<T> left;
+        final Node<T> right;
+        final int size;
+        final int height;
+
+        Node(T value, Node<T> left, Node<T> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T> build(Object[] items, int from, int to) {
+        if (from >= to) return null;
+        int mid = (from + to) >>> 1;
+        return new Node<>((T) items[mid], PersistentList.<T>build(items, from, mid),
+                PersistentList.<T>build(items, mid + 1, to));
+    }
+
+    private static <T> Node<T> set(Node<T> node, int index, T item) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return new Node<>(node.value, set(node.left, index, item), node.right);
+        } else if (index > leftSize) {
+            return new Node<>(node.value, node.left, set(node.right, index - leftSize - 1, item));
+        }
+        return new Node<>(item, node.left, node.right);
+    }
+
+    private static <T> Node<T> insert(Node<T> node, int index, T item) {
+        if (node == null) return new Node<>(item, null, null);
+        int leftSize = size(node.left);
+        if (index <= leftSize) {
+            return balance(node.value, insert(node.left, index, item), node.right);
+        }
+        return balance(node.value, node.left, insert(node.right, index - leftSize - 1, item));
+    }
+
+    private static <T> Node<T> remove(Node<T> node, int index) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return balance(node.value, remove(node.left, index), node.right);
+        } else if (index > leftSize) {
+            return balance(node.value, node.left, remove(node.right, index - leftSize - 1));
+        }
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+        Node<T> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.value, node.left, remove(node.right, 0));
+    }
+
+    /**
+     * @return the first count elements of node
+     */
+    private static <T> Node<T> take(Node<T> node, int count) {
+        if (node == null || count == 0) return null;
+        int leftSize = size(node.left);
+        if (count <= leftSize) return take(node.left, count);
+        return join(node.left, node.value, take(node.right, count - leftSize - 1));
+    }
+
+    /**
+     * @return the elements of node after the first count
+     */
+    private static <T> Node<T> drop(Node<T> node, int count) {
+        if (node == null || count == 0) return node;
+        int leftSize = size(node.left);
+        if (count > leftSize) return drop(node.right, count - leftSize - 1);
+        return join(drop(node.left, count), node.value, node.right);
+    }
+
+    /**
+     * @return the elements of left followed by those of right
+     */
+    private static <T> Node<T> concat(Node<T> left, Node<T> right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        Node<T> first = right;
+        while (first.left != null) {
+            first = first.left;
+        }
+        return join(left, first.value, remove(right, 0));
+    }
+
+    /**
+     * Joins two trees with value in between, in O(|height(left) - height(right)|).
+     */
+    private static <T> Node<T> join(Node<T> left, T value, Node<T> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            return balance(left.value, left.left, join(left.right, value, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+            return balance(right.value, join(left, value, right.left), right.right);
+        }
+        return new Node<>(value, left, right);
+    }
+
+    private static <T> Node<T> balance(T value, Node<T> left, Node<T> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+            }
+            Node<T> pivot = left.right;
+            return new Node<>(pivot.value, new Node<>(left.value, left.left, pivot.left),
+                    new Node<>(value, pivot.right, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+            }
+            Node<T> pivot = right.left;
+            return new Node<>(pivot.value, new Node<>(value, left, pivot.left),
+                    new Node<>(right.value, pivot.right, right.right));
+        }
+        return new Node<>(value, left, right);
+    }
+
+    /**
+     * In-order iterator, O(1) amortized per element.
+     */
+    private static final class TreeIterator<T> implements Iterator<T> {
+        private final ArrayList<Node<T>> stack = new ArrayList<>();
+
+        TreeIterator(Node<T> root) {
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<T> node) {
+            while (node != null) {
+                stack.add(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (stack.isEmpty()) throw new NoSuchElementException();
+            Node<T> node = stack.remove(stack.size() - 1);
+            pushLeft(node.right);
+            return node.value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
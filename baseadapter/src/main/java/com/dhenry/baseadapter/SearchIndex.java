@@ -0,0 +1,373 @@
+package com.dhenry.baseadapter;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sorted key index over the items of a {@link BaseAdapter}.
+ * <p>
+ * Keys are extracted from each item by one or more {@link KeyExtractor}s and kept in a sorted
+ * array alongside the adapter position they belong to. The index is built and updated on a
+ * background thread; change notifications only extract keys for the items they touch. Queries are
+ * answered by binary search against the most recently published snapshot and never block.
+ * <p>
+ * All indices share one background thread, which exits when it has been idle for a while.
+ * <p>
+ * Usage:
+ * <pre>
+ * {@code
+ * BaseAdapter<Contact> adapter = BaseAdapter.with(contacts, BR.item)
+ * .map(Contact.class, R.layout.contact)
+ * .searchIndex(Arrays.asList(nameExtractor, emailExtractor))
+ * .into(myRecyclerView);
+ * int position = adapter.getSearchIndex().findPosition("jane");
+ * }
+ * </pre>
+ */
+public class SearchIndex<T> {
+
+    public interface KeyExtractor<T> {
+        /**
+         * @param item the item
+         * @return the key for item, or null if it should not be indexed by this extractor
+         */
+        @Nullable
+        String getKey(T item);
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            int result = lhs.key.compareTo(rhs.key);
+            return result != 0 ? result : lhs.position - rhs.position;
+        }
+    };
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "BaseAdapter-SearchIndex");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    };
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private final BaseAdapter<T> adapter;
+    private final List<T> list;
+    private final List<KeyExtractor<T>> extractors;
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+    private volatile boolean isShutdown = false;
+
+    // only accessed from the executor thread
+    private String[] keys = new String[0];
+    private int[] positions = new int[0];
+    private int size = 0;
+
+    // the latest state visible to queries
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new int[0]);
+
+    private final RecyclerView.AdapterDataObserver observer = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            rebuild();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            final int from = Math.min(positionStart, list.size());
+            final List<T> items = copy(from, Math.min(positionStart + itemCount, list.size()));
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    removeRange(from, items.size(), false);
+                    insertEntries(extract(items, from));
+                }
+            });
+        }
+
+        @Override
+        public void onItemRangeInserted(final int positionStart, int itemCount) {
+            final List<T> items = copy(positionStart, positionStart + itemCount);
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    shift(positionStart, items.size());
+                    insertEntries(extract(items, positionStart));
+                }
+            });
+        }
+
+        @Override
+        public void onItemRangeRemoved(final int positionStart, final int itemCount) {
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    removeRange(positionStart, itemCount, true);
+                }
+            });
+        }
+
+        @Override
+        public void onItemRangeMoved(final int fromPosition, final int toPosition, final int itemCount) {
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    move(fromPosition, toPosition, itemCount);
+                }
+            });
+        }
+    };
+
+    SearchIndex(@NonNull BaseAdapter<T> adapter, @NonNull List<T> list, @NonNull List<KeyExtractor<T>> extractors) {
+        this.adapter = adapter;
+        this.list = list;
+        this.extractors = extractors;
+        adapter.registerAdapterDataObserver(observer);
+        rebuild();
+    }
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return true if every change notified so far has been applied to the index
+     */
+    public boolean isUpToDate() {
+        return pendingUpdates.get() == 0;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the lowest adapter position with an item matching key exactly, or
+     * {@link RecyclerView#NO_POSITION} if there is none
+     */
+    public int findPosition(@NonNull String key) {
+        Snapshot current = snapshot;
+        int index = lowerBound(current.keys, key);
+        if (index < current.keys.length && current.keys[index].equals(key)) {
+            return current.positions[index];
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * @param prefix the prefix to look up
+     * @return the adapter positions of all items with a key starting with prefix, in ascending order
+     */
+    @NonNull
+    public int[] findPositionsWithPrefix(@NonNull String prefix) {
+        Snapshot current = snapshot;
+        int start = lowerBound(current.keys, prefix);
+        int end = start;
+        while (end < current.keys.length && current.keys[end].startsWith(prefix)) {
+            end++;
+        }
+        int[] result = Arrays.copyOfRange(current.positions, start, end);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Stops updating the index. It answers queries from its last snapshot afterwards.
+     * Must be called on the main thread.
+     */
+    public void shutdown() {
+        if (isShutdown) return;
+        isShutdown = true;
+        adapter.unregisterAdapterDataObserver(observer);
+    }
+
+    /**
+     * Re-extracts all keys, e.g. after list changes that were not notified to the adapter.
+     */
+    void rebuild() {
+        final List<T> items = copy(0, list.size());
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                size = 0;
+                insertEntries(extract(items, 0));
+            }
+        });
+    }
+
+    private List<T> copy(int from, int to) {
+        if (from >= to) return Collections.emptyList();
+        return new ArrayList<>(list.subList(from, to));
+    }
+
+    private void submit(final Runnable update) {
+        if (isShutdown) return;
+        pendingUpdates.incrementAndGet();
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!isShutdown) {
+                    update.run();
+                }
+                // only publish once the queue is drained so bursts of changes cost one copy
+                if (pendingUpdates.decrementAndGet() == 0 && !isShutdown) {
+                    snapshot = new Snapshot(Arrays.copyOf(keys, size), Arrays.copyOf(positions, size));
+                }
+            }
+        });
+    }
+
+    private List<Entry> extract(List<T> items, int firstPosition) {
+        List<Entry> entries = new ArrayList<>(items.size() * extractors.size());
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            if (item == null) continue;
+            for (KeyExtractor<T> extractor : extractors) {
+                String key = extractor.getKey(item);
+                if (key != null) {
+                    entries.add(new Entry(key, firstPosition + i));
+                }
+            }
+        }
+        Collections.sort(entries, ENTRY_ORDER);
+        return entries;
+    }
+
+    /**
+     * Merges sorted entries into the index.
+     */
+    private void insertEntries(List<Entry> entries) {
+        if (entries.isEmpty()) return;
+        int total = size + entries.size();
+        String[] mergedKeys = new String[total];
+        int[] mergedPositions = new int[total];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < total; k++) {
+            boolean takeExisting = j >= entries.size() || (i < size && compare(i, entries.get(j)) <= 0);
+            if (takeExisting) {
+                mergedKeys[k] = keys[i];
+                mergedPositions[k] = positions[i];
+                i++;
+            } else {
+                mergedKeys[k] = entries.get(j).key;
+                mergedPositions[k] = entries.get(j).position;
+                j++;
+            }
+        }
+        keys = mergedKeys;
+        positions = mergedPositions;
+        size = total;
+    }
+
+    private int compare(int index, Entry entry) {
+        int result = keys[index].compareTo(entry.key);
+        return result != 0 ? result : positions[index] - entry.position;
+    }
+
+    /**
+     * Drops the entries of positions [from, from + count) and, if collapse is set, shifts the
+     * positions after the range down by count.
+     */
+    private void removeRange(int from, int count, boolean collapse) {
+        int end = from + count;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int position = positions[i];
+            if (position >= from && position < end) continue;
+            keys[kept] = keys[i];
+            positions[kept] = collapse && position >= end ? position - count : position;
+            kept++;
+        }
+        Arrays.fill(keys, kept, size, null);
+        size = kept;
+    }
+
+    private void shift(int from, int count) {
+        for (int i = 0; i < size; i++) {
+            if (positions[i] >= from) {
+                positions[i] += count;
+            }
+        }
+    }
+
+    private void move(int from, int to, int count) {
+        for (int i = 0; i < size; i++) {
+            int position = positions[i];
+            if (position >= from && position < from + count) {
+                positions[i] = position - from + to;
+            } else {
+                if (position >= from + count) position -= count;
+                if (position >= to) position += count;
+                positions[i] = position;
+            }
+        }
+        // keys are unchanged, only ties between equal keys may need reordering
+        restoreTieOrder();
+    }
+
+    private void restoreTieOrder() {
+        for (int i = 1; i < size; i++) {
+            String key = keys[i];
+            int position = positions[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j].equals(key) && positions[j] > position) {
+                keys[j + 1] = keys[j];
+                positions[j + 1] = positions[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            positions[j + 1] = position;
+        }
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static class Entry {
+        final String key;
+        final int position;
+
+        Entry(String key, int position) {
+            this.key = key;
+            this.position = position;
+        }
+    }
+
+    private static class Snapshot {
+        final String[] keys;
+        final int[] positions;
+
+        Snapshot(String[] keys, int[] positions) {
+            this.keys = keys;
+            this.positions = positions;
+        }
+    }
+}
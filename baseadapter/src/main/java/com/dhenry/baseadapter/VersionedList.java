@@ -0,0 +1,139 @@
+package com.dhenry.baseadapter;
+
+import android.databinding.ListChangeRegistry;
+import android.databinding.ObservableList;
+import android.support.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ObservableList whose contents are held in a {@link PersistentList}.
+ * <p>
+ * Pass it to {@link BaseAdapter#with} like any other ObservableList. {@link #snapshot()} returns
+ * the current version in O(1); it never changes, so background stages (diffing, filtering, search)
+ * can read it without copying or locking. A version they derive from a snapshot can be handed
+ * back with {@link #publish}, which replays the recorded changes as range notifications.
+ * <p>
+ * Must only be mutated on the main thread.
+ */
+public class VersionedList<T> extends AbstractList<T> implements ObservableList<T> {
+
+    private transient ListChangeRegistry listeners = new ListChangeRegistry();
+    private PersistentList<T> current;
+
+    public VersionedList() {
+        this(PersistentList.<T>empty());
+    }
+
+    public VersionedList(@NonNull Collection<? extends T> items) {
+        this(PersistentList.<T>from(items));
+    }
+
+    public VersionedList(@NonNull PersistentList<T> initial) {
+        this.current = initial;
+    }
+
+    /**
+     * @return the current immutable version of this list
+     */
+    @NonNull
+    public PersistentList<T> snapshot() {
+        return current;
+    }
+
+    /**
+     * Replaces the contents with next. If next was derived from the current version the changes
+     * in between are notified as ranges, otherwise a full change is notified.
+     *
+     * @param next the new version
+     */
+    public void publish(@NonNull PersistentList<T> next) {
+        if (next == current) return;
+        List<PersistentList.Change> changes = next.changesSince(current);
+        current = next;
+        modCount++;
+        if (changes == null) {
+            listeners.notifyChanged(this);
+            return;
+        }
+        for (PersistentList.Change change : changes) {
+            switch (change.type) {
+                case PersistentList.Change.CHANGED:
+                    listeners.notifyChanged(this, change.position, change.count);
+                    break;
+                case PersistentList.Change.INSERTED:
+                    listeners.notifyInserted(this, change.position, change.count);
+                    break;
+                case PersistentList.Change.REMOVED:
+                    listeners.notifyRemoved(this, change.position, change.count);
+                    break;
+                case PersistentList.Change.MOVED:
+                    listeners.notifyMoved(this, change.position, change.toPosition, change.count);
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        return current.get(index);
+    }
+
+    @Override
+    public int size() {
+        return current.size();
+    }
+
+    @Override
+    public T set(int index, T element) {
+        T previous = current.get(index);
+        publish(current.with(index, element));
+        return previous;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        publish(current.plus(index, element));
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends T> items) {
+        if (items.isEmpty()) return false;
+        publish(current.plusAll(index, items));
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> items) {
+        return addAll(size(), items);
+    }
+
+    @Override
+    public T remove(int index) {
+        T previous = current.get(index);
+        publish(current.minus(index));
+        return previous;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        publish(current.minusRange(fromIndex, toIndex));
+    }
+
+    @Override
+    public void clear() {
+        removeRange(0, size());
+    }
+
+    @Override
+    public void addOnListChangedCallback(OnListChangedCallback<? extends ObservableList<T>> callback) {
+        listeners.add(callback);
+    }
+
+    @Override
+    public void removeOnListChangedCallback(OnListChangedCallback<? extends ObservableList<T>> callback) {
+        listeners.remove(callback);
+    }
+}
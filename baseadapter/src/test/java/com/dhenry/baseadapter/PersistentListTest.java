@@ -0,0 +1,154 @@
+package com.dhenry.baseadapter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentListTest {
+
+    @Test
+    public void matchesArrayListUnderRandomOperations() {
+        Random random = new Random(42);
+        PersistentList<Integer> list = PersistentList.empty();
+        List<Integer> expected = new ArrayList<>();
+        int next = 0;
+        for (int step = 0; step < 5000; step++) {
+            int size = expected.size();
+            switch (random.nextInt(7)) {
+                case 0:
+                    int index = random.nextInt(size + 1);
+                    list = list.plus(index, next);
+                    expected.add(index, next++);
+                    break;
+                case 1:
+                    if (size == 0) break;
+                    index = random.nextInt(size);
+                    list = list.with(index, next);
+                    expected.set(index, next++);
+                    break;
+                case 2:
+                    if (size == 0) break;
+                    index = random.nextInt(size);
+                    list = list.minus(index);
+                    expected.remove(index);
+                    break;
+                case 3:
+                    if (size == 0) break;
+                    int from = random.nextInt(size);
+                    int to = random.nextInt(size);
+                    list = list.move(from, to);
+                    expected.add(to, expected.remove(from));
+                    break;
+                case 4:
+                    index = random.nextInt(size + 1);
+                    List<Integer> items = new ArrayList<>();
+                    for (int i = random.nextInt(20); i > 0; i--) {
+                        items.add(next++);
+                    }
+                    list = list.plusAll(index, items);
+                    expected.addAll(index, items);
+                    break;
+                case 5:
+                    from = random.nextInt(size + 1);
+                    to = from + random.nextInt(size - from + 1);
+                    list = list.minusRange(from, to);
+                    expected.subList(from, to).clear();
+                    break;
+                case 6:
+                    if (random.nextInt(50) != 0) break;
+                    list = list.minusRange(0, size);
+                    expected.clear();
+                    break;
+            }
+            assertEquals(expected.size(), list.size());
+        }
+        assertEquals(expected, list);
+        assertEquals(expected, new ArrayList<>(list));
+    }
+
+    @Test
+    public void keepsOlderVersionsIntact() {
+        PersistentList<String> first = PersistentList.from(Arrays.asList("a", "b", "c"));
+        PersistentList<String> second = first.plus(1, "x").minus(3).with(0, "y");
+        assertEquals(Arrays.asList("a", "b", "c"), first);
+        assertEquals(Arrays.asList("y", "x", "b"), second);
+    }
+
+    @Test
+    public void changesSinceReturnsChangesOldestFirst() {
+        PersistentList<String> base = PersistentList.from(Arrays.asList("a", "b", "c", "d"));
+        PersistentList<String> derived = base.with(0, "x")
+                .plusAll(1, Arrays.asList("y", "z"))
+                .minusRange(3, 5)
+                .move(0, 2);
+
+        List<PersistentList.Change> changes = derived.changesSince(base);
+        assertEquals(4, changes.size());
+        assertChange(changes.get(0), PersistentList.Change.CHANGED, 0, 1, 0);
+        assertChange(changes.get(1), PersistentList.Change.INSERTED, 1, 2, 1);
+        assertChange(changes.get(2), PersistentList.Change.REMOVED, 3, 2, 3);
+        assertChange(changes.get(3), PersistentList.Change.MOVED, 0, 1, 2);
+    }
+
+    @Test
+    public void changesSinceSelfIsEmpty() {
+        PersistentList<String> list = PersistentList.from(Arrays.asList("a", "b"));
+        assertTrue(list.changesSince(list).isEmpty());
+    }
+
+    @Test
+    public void changesSinceUnrelatedVersionIsNull() {
+        PersistentList<String> base = PersistentList.from(Arrays.asList("a", "b"));
+        PersistentList<String> other = PersistentList.from(Arrays.asList("a", "b"));
+        assertNull(base.plus("c").changesSince(other));
+        // a newer version is not an ancestor of an older one
+        assertNull(base.changesSince(base.plus("c")));
+    }
+
+    @Test
+    public void changesSinceBeyondLogDepthIsNull() {
+        PersistentList<Integer> base = PersistentList.empty();
+        PersistentList<Integer> list = base;
+        for (int i = 0; i < 5000; i++) {
+            list = list.plus(i);
+        }
+        assertNull(list.changesSince(base));
+    }
+
+    @Test
+    public void clearIsRecordedAsSingleRemoval() {
+        PersistentList<String> base = PersistentList.from(Arrays.asList("a", "b", "c"));
+        PersistentList<String> cleared = base.minusRange(0, 3);
+        assertTrue(cleared.isEmpty());
+        List<PersistentList.Change> changes = cleared.changesSince(base);
+        assertEquals(1, changes.size());
+        assertChange(changes.get(0), PersistentList.Change.REMOVED, 0, 3, 0);
+    }
+
+    @Test
+    public void emptyRangeReturnsSameVersion() {
+        PersistentList<String> list = PersistentList.from(Arrays.asList("a", "b"));
+        assertSame(list, list.minusRange(1, 1));
+        assertSame(list, list.plusAll(1, new ArrayList<String>()));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void minusRangeRejectsInvalidRange() {
+        PersistentList.from(Arrays.asList("a", "b")).minusRange(1, 3);
+    }
+
+    private static void assertChange(PersistentList.Change change, int type, int position, int count, int toPosition) {
+        assertEquals(type, change.type);
+        assertEquals(position, change.position);
+        assertEquals(count, change.count);
+        assertEquals(toPosition, change.toPosition);
+    }
+}
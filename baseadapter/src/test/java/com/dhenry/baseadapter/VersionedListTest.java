@@ -0,0 +1,140 @@
+package com.dhenry.baseadapter;
+
+import android.databinding.ObservableList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VersionedListTest {
+
+    private VersionedList<String> list;
+    private ReplayingCallback callback;
+
+    @Before
+    public void setUp() {
+        list = new VersionedList<>(Arrays.asList("a", "b", "c", "d"));
+        callback = new ReplayingCallback(list);
+        list.addOnListChangedCallback(callback);
+    }
+
+    @Test
+    public void publishReplaysDerivedChangesAsRanges() {
+        PersistentList<String> next = list.snapshot()
+                .with(1, "x")
+                .plusAll(4, Arrays.asList("e", "f"))
+                .minusRange(0, 1)
+                .move(0, 3);
+
+        list.publish(next);
+
+        assertFalse(callback.fullChange);
+        assertEquals(4, callback.notifications);
+        callback.assertMatches(list);
+        assertEquals(next, list);
+    }
+
+    @Test
+    public void publishOfUnrelatedVersionIsFullChange() {
+        list.publish(PersistentList.from(Arrays.asList("x", "y")));
+
+        assertTrue(callback.fullChange);
+        assertEquals(Arrays.asList("x", "y"), list);
+    }
+
+    @Test
+    public void publishOfCurrentVersionNotifiesNothing() {
+        list.publish(list.snapshot());
+
+        assertEquals(0, callback.notifications);
+    }
+
+    @Test
+    public void clearIsNotifiedOnce() {
+        list.clear();
+
+        assertEquals(1, callback.notifications);
+        assertTrue(list.isEmpty());
+        callback.assertMatches(list);
+    }
+
+    @Test
+    public void snapshotIsNotAffectedByLaterChanges() {
+        PersistentList<String> snapshot = list.snapshot();
+        list.add("e");
+        list.remove(0);
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), snapshot);
+        assertEquals(Arrays.asList("b", "c", "d", "e"), list);
+        callback.assertMatches(list);
+    }
+
+    /**
+     * Applies each notification to a copy of the list. Notifications arrive after the list has
+     * changed, so inserted and changed items are recorded as null and only the untouched items
+     * are compared against the list.
+     */
+    private static class ReplayingCallback extends ObservableList.OnListChangedCallback<ObservableList<String>> {
+        final List<String> replayed;
+        int notifications = 0;
+        boolean fullChange = false;
+
+        ReplayingCallback(List<String> initial) {
+            replayed = new ArrayList<>(initial);
+        }
+
+        @Override
+        public void onChanged(ObservableList<String> sender) {
+            notifications++;
+            fullChange = true;
+            replayed.clear();
+            replayed.addAll(sender);
+        }
+
+        @Override
+        public void onItemRangeChanged(ObservableList<String> sender, int positionStart, int itemCount) {
+            notifications++;
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                replayed.set(i, null);
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(ObservableList<String> sender, int positionStart, int itemCount) {
+            notifications++;
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                replayed.add(i, null);
+            }
+        }
+
+        @Override
+        public void onItemRangeMoved(ObservableList<String> sender, int fromPosition, int toPosition, int itemCount) {
+            notifications++;
+            for (int i = 0; i < itemCount; i++) {
+                replayed.add(toPosition + i, replayed.remove(fromPosition + i));
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(ObservableList<String> sender, int positionStart, int itemCount) {
+            notifications++;
+            replayed.subList(positionStart, positionStart + itemCount).clear();
+        }
+
+        void assertMatches(List<String> actual) {
+            assertEquals(actual.size(), replayed.size());
+            for (int i = 0; i < replayed.size(); i++) {
+                if (replayed.get(i) != null) {
+                    assertEquals(actual.get(i), replayed.get(i));
+                }
+            }
+        }
+    }
+}
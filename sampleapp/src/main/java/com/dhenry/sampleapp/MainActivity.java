@@ -18,6 +18,12 @@ import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
 
+    // compiled once and shared by the adapters of all nested rows
+    private static final BaseAdapter.AdapterConfig<SimpleItem> SIMPLE_ITEM_CONFIG =
+            BaseAdapter.<SimpleItem>configure()
+                    .map(SimpleItem.class, R.layout.item_text, BR.simpleItem)
+                    .build();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -51,9 +57,7 @@ public class MainActivity extends AppCompatActivity {
     public static void setSimpleItemList(RecyclerView container, List<SimpleItem> moreSimpleItems) {
         container.setLayoutManager(new LinearLayoutManager(container.getContext()));
 
-        BaseAdapter.with(moreSimpleItems)
-                .map(SimpleItem.class, R.layout.item_text, BR.simpleItem)
-                .into(container);
+        SIMPLE_ITEM_CONFIG.into(moreSimpleItems, container);
     }
 
     @NonNull